@@ -0,0 +1,137 @@
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures the time from process launch to the first successful GET /tasks for each startup mode,
+ * runs as a single source file from the project directory after: mvn -Paot -DskipTests package
+ *
+ *   java loadtest/StartupBenchmark.java [runs] [mode...] [-- application arguments]
+ *
+ * Modes:
+ *   jar       java -jar on the executable jar
+ *   aot       the unpacked jar with the AOT-generated context (-Dspring.aot.enabled=true)
+ *   aot-cds   as aot, plus the class data sharing archive recorded by the build
+ *   native    the GraalVM executable from mvn -Pnative native:compile
+ *
+ * Every run starts a fresh process on port 18080 against the configured database and stops it again.
+ * Application arguments after "--" are passed to every mode, e.g. -- --spring.profiles.active=dev,virtual
+ */
+public class StartupBenchmark {
+
+    private static final int PORT = 18080;
+    private static final String JAR = "target/demo-0.0.1-SNAPSHOT.jar";
+    private static final String EXTRACTED = "target/extracted";
+    private static final String NATIVE = "target/demo";
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<String> modes = new ArrayList<>();
+        List<String> appArgs = new ArrayList<>();
+        List<String> target = modes;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--")) {
+                target = appArgs;
+            } else {
+                target.add(args[i]);
+            }
+        }
+        if (modes.isEmpty()) {
+            modes = List.of("jar", "aot", "aot-cds", "native");
+        }
+        appArgs.add("--server.port=" + PORT);
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(200))
+            .build();
+
+        System.out.printf("%-8s %6s %8s %8s %8s%n", "mode", "runs", "min ms", "p50 ms", "max ms");
+        for (String mode : modes) {
+            List<String> command = command(mode, appArgs);
+            if (command == null) {
+                System.out.printf("%-8s skipped, not built%n", mode);
+                continue;
+            }
+
+            List<Long> samples = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                samples.add(timeToFirstRequest(client, command, mode));
+            }
+            Collections.sort(samples);
+            System.out.printf("%-8s %6d %8d %8d %8d%n",
+                mode, runs, samples.get(0), samples.get(samples.size() / 2), samples.get(samples.size() - 1));
+        }
+    }
+
+    // The unpacked modes run from target/extracted: the archive only maps with the classpath it was recorded with
+    private static List<String> command(String mode, List<String> appArgs) {
+        String extractedJar = new File(JAR).getName();
+        List<String> command = new ArrayList<>();
+        switch (mode) {
+            case "jar" -> {
+                if (!new File(JAR).exists()) return null;
+                command.addAll(List.of("java", "-jar", JAR));
+            }
+            case "aot" -> {
+                if (!new File(EXTRACTED, extractedJar).exists()) return null;
+                command.addAll(List.of("java", "-Dspring.aot.enabled=true", "-jar", extractedJar));
+            }
+            case "aot-cds" -> {
+                if (!new File(EXTRACTED, "application.jsa").exists()) return null;
+                command.addAll(List.of("java", "-XX:SharedArchiveFile=application.jsa",
+                    "-Dspring.aot.enabled=true", "-jar", extractedJar));
+            }
+            case "native" -> {
+                if (!new File(NATIVE).canExecute()) return null;
+                command.add(NATIVE);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        command.addAll(appArgs);
+        return command;
+    }
+
+    private static long timeToFirstRequest(HttpClient client, List<String> command, String mode) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + "/tasks?limit=1"))
+            .timeout(Duration.ofSeconds(5))
+            .GET()
+            .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+            .directory(mode.startsWith("aot") ? new File(EXTRACTED) : null)
+            .redirectErrorStream(true)
+            .redirectOutput(new File("target/startup-" + mode + ".log").getAbsoluteFile())
+            .start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode + " exited with " + process.exitValue()
+                        + ", see target/startup-" + mode + ".log");
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (java.io.IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException(mode + " didn't answer GET /tasks within " + TIMEOUT);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Closed-loop HTTP load generator for the Task API, runs as a single source file:
+ *
+ *   java loadtest/TaskLoadTest.java [baseUrl[,baseUrl...]] [concurrency] [durationSeconds] [scenario]
+ *
+ * Scenarios:
+ *   read    GET /tasks/{id} on seeded tasks
+ *   page    GET /tasks?limit=50 from a random cursor
+ *   write   POST /tasks with unique titles
+ *   mixed   80% read, 10% page, 10% write
+ *
+ * Every worker sends its next request as soon as the previous one completed, so the
+ * reported throughput is what the server sustains at the given concurrency.
+ *
+ * With several base URLs, e.g. a servlet and a reactive instance on the same database, the scenario
+ * runs against each of them in turn, on the same seeded tasks, and the results are printed per target.
+ */
+public class TaskLoadTest {
+
+    private static final int SEED_TASKS = 1000;
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        String[] baseUrls = (args.length > 0 ? args[0] : "http://localhost:8080").split(",");
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String scenario = args.length > 3 ? args[3] : "mixed";
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        // Seeded once, every target reads the same tasks
+        List<Long> ids = seed(client, baseUrls[0], runId);
+        AtomicLong titles = new AtomicLong();
+
+        System.out.printf("scenario=%s concurrency=%d duration=%ds%n", scenario, concurrency, durationSeconds);
+        for (String baseUrl : baseUrls) {
+            run(client, baseUrl, concurrency, durationSeconds, scenario, ids, runId, titles);
+        }
+    }
+
+    private static void run(HttpClient client, String baseUrl, int concurrency, int durationSeconds, String scenario,
+                            List<Long> ids, String runId, AtomicLong titles) throws InterruptedException {
+        AtomicLong errors = new AtomicLong();
+        List<List<Long>> latencies = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            List<Long> samples = new ArrayList<>();
+            latencies.add(samples);
+            workers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = nextRequest(scenario, baseUrl, ids, runId, titles, random);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    samples.add(System.nanoTime() - start);
+                }
+                return null;
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationSeconds + 60L, TimeUnit.SECONDS);
+
+        List<Long> all = new ArrayList<>();
+        latencies.forEach(all::addAll);
+        Collections.sort(all);
+
+        System.out.printf("target=%s%n", baseUrl);
+        System.out.printf("  requests=%d errors=%d throughput=%.1f req/s%n",
+            all.size(), errors.get(), all.size() / (double) durationSeconds);
+        System.out.printf("  latency ms p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+            percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 1.0));
+    }
+
+    /*
+     * Creates the tasks read by the read, page and mixed scenarios and returns their ids
+     */
+    private static List<Long> seed(HttpClient client, String baseUrl, String runId) throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < SEED_TASKS; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"title\":\"load-").append(runId).append('-').append(i)
+                .append("\",\"description\":\"Seeded by TaskLoadTest\"}");
+        }
+        body.append(']');
+
+        HttpResponse<String> response = client.send(
+            json(baseUrl + "/tasks/batch").POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(),
+            HttpResponse.BodyHandlers.ofString());
+        List<Long> ids = new ArrayList<>();
+        Matcher matcher = ID.matcher(response.body());
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("Seeding failed with status " + response.statusCode() + ": " + response.body());
+        }
+        return ids;
+    }
+
+    private static HttpRequest nextRequest(String scenario, String baseUrl, List<Long> ids, String runId,
+                                           AtomicLong titles, ThreadLocalRandom random) {
+        String kind = scenario;
+        if (scenario.equals("mixed")) {
+            int roll = random.nextInt(100);
+            kind = roll < 80 ? "read" : roll < 90 ? "page" : "write";
+        }
+        switch (kind) {
+            case "read":
+                return json(baseUrl + "/tasks/" + ids.get(random.nextInt(ids.size()))).GET().build();
+            case "page":
+                return json(baseUrl + "/tasks?limit=50&after=" + ids.get(random.nextInt(ids.size()))).GET().build();
+            case "write":
+                String task = "{\"title\":\"load-" + runId + "-w" + titles.incrementAndGet()
+                    + "\",\"description\":\"Written by TaskLoadTest\"}";
+                return json(baseUrl + "/tasks").POST(HttpRequest.BodyPublishers.ofString(task)).build();
+            default:
+                throw new IllegalArgumentException("Unknown scenario: " + scenario);
+        }
+    }
+
+    private static HttpRequest.Builder json(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+            .timeout(Duration.ofSeconds(30))
+            .header("Content-Type", "application/json")
+            .header("Accept", "application/json");
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
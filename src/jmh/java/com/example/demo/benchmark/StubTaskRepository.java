@@ -0,0 +1,44 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.Task;
+import com.example.demo.repository.TaskRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+
+/*
+ * In-memory TaskRepository for the controller benchmarks
+ *
+ * findById always returns the given Task and the save methods return their argument,
+ * so the measured time is the controller's own work and not a database or a mocking library
+ */
+final class StubTaskRepository {
+
+    private StubTaskRepository() {
+    }
+
+    static TaskRepository returning(Task task) {
+        return (TaskRepository) Proxy.newProxyInstance(
+            TaskRepository.class.getClassLoader(),
+            new Class<?>[] {TaskRepository.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "findById":
+                        return Optional.of(task);
+                    case "save":
+                    case "saveAndFlush":
+                        return args[0];
+                    case "existsByTitle":
+                        return false;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "StubTaskRepository";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.controller.TaskController;
+import com.example.demo.model.Task;
+import com.example.demo.service.TaskCopyService;
+import com.example.demo.service.TaskEventPublisher;
+import com.example.demo.service.TaskTitleIndex;
+import com.example.demo.service.TaskWriteBehindBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Request handling cost of TaskController without a database:
+ * field validation with its HashMap error map, and the Map<String, Object> patch handling of updateTask
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskControllerBenchmark {
+
+    private TaskController taskController;
+    private Map<String, Object> fullUpdate;
+    private Map<String, Object> completedUpdate;
+    private Map<String, Object> invalidUpdate;
+
+    @Setup
+    public void setUp() {
+        Task existing = new Task("Existing Title", "Existing Description");
+        existing.setId(1L);
+        // Disabled write-behind: completion toggles take the synchronous path
+        TaskEventPublisher eventPublisher = new TaskEventPublisher(null, null, false);
+        TaskWriteBehindBuffer writeBehindBuffer = new TaskWriteBehindBuffer(
+            null, new NoOpCacheManager(), new SimpleMeterRegistry(), eventPublisher, false, 0);
+        // Disabled title index: never loaded, createTask only adds to it
+        TaskTitleIndex titleIndex = new TaskTitleIndex(
+            null, null, new SimpleMeterRegistry(), false, 1, 0.01, Duration.ofMinutes(10));
+        // Import and export aren't benchmarked, the service is never called
+        TaskCopyService taskCopyService = new TaskCopyService(
+            null, null, titleIndex, eventPublisher, new SimpleMeterRegistry(), Path.of("target"), Duration.ofHours(24));
+        taskController = new TaskController(StubTaskRepository.returning(existing), null, writeBehindBuffer,
+            eventPublisher, null, titleIndex, taskCopyService);
+
+        fullUpdate = new HashMap<>();
+        fullUpdate.put("title", "New Title");
+        fullUpdate.put("description", "New Description");
+        fullUpdate.put("completed", true);
+
+        completedUpdate = new HashMap<>();
+        completedUpdate.put("completed", true);
+
+        invalidUpdate = new HashMap<>();
+        invalidUpdate.put("title", " ");
+        invalidUpdate.put("completed", "yes");
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createValid() {
+        return taskController.createTask(new Task("Title", "Description"));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createInvalid() {
+        return taskController.createTask(new Task("", " "));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> updateAllFields() {
+        return taskController.updateTask(1L, fullUpdate);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> updateCompleted() {
+        return taskController.updateTask(1L, completedUpdate);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> updateInvalid() {
+        return taskController.updateTask(1L, invalidUpdate);
+    }
+}
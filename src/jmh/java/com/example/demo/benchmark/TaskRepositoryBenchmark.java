@@ -0,0 +1,85 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.DemoApplication;
+import com.example.demo.model.Task;
+import com.example.demo.repository.TaskRepository;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Repository round trips through Spring Data JPA and Hibernate against H2 in PostgreSQL mode
+ * (see application-benchmark.properties), with the task cache disabled
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskRepositoryBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private TaskRepository taskRepository;
+    private final AtomicLong titles = new AtomicLong();
+    private long minId;
+    private long maxId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SpringApplication.run(DemoApplication.class, "--spring.profiles.active=benchmark");
+        taskRepository = context.getBean(TaskRepository.class);
+
+        List<Task> tasks = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            tasks.add(new Task("Seeded title " + i, "Seeded description " + i));
+        }
+        List<Task> saved = taskRepository.saveAll(tasks);
+        minId = saved.get(0).getId();
+        maxId = saved.get(saved.size() - 1).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(minId, maxId + 1);
+    }
+
+    @Benchmark
+    public Optional<Task> findById() {
+        return taskRepository.findById(randomId());
+    }
+
+    @Benchmark
+    public boolean existsByTitle() {
+        return taskRepository.existsByTitle("Seeded title " + ThreadLocalRandom.current().nextInt(ROWS));
+    }
+
+    @Benchmark
+    public Slice<Task> keysetPage() {
+        return taskRepository.findByIdGreaterThanOrderByIdAsc(randomId(), PageRequest.ofSize(50));
+    }
+
+    @Benchmark
+    public Task insertAndDelete() {
+        Task task = taskRepository.saveAndFlush(new Task("Benchmark title " + titles.incrementAndGet(), "Benchmark"));
+        taskRepository.deleteById(task.getId());
+        return task;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskListFormat;
+import com.example.demo.model.Task;
+import com.example.demo.service.TaskStreamService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Serialization of Task lists as written by GET /tasks, per format, field selection and compression
+ *
+ * Besides the time per list, the secondary "bytes" result is the size of one list on the wire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskSerializationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    private TaskListFormat format;
+
+    // "all" for whole Tasks, otherwise the value of ?fields=
+    @Param({"all", "id,title"})
+    private String fields;
+
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    private TaskStreamService taskStreamService;
+    private List<Task> tasks;
+    private List<TaskField> selectedFields;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireSize {
+        // Not summed up: the size of the last list written
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        // Configured like the application's ObjectMapper: ISO dates
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        taskStreamService = new TaskStreamService(null, objectMapper);
+
+        selectedFields = null;
+        if (!fields.equals("all")) {
+            selectedFields = new ArrayList<>();
+            for (String property : fields.split(",")) {
+                selectedFields.add(TaskField.fromProperty(property).orElseThrow());
+            }
+        }
+
+        Instant updatedAt = Instant.parse("2025-01-01T10:00:00.123456Z");
+        tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Task task = new Task("Task title " + i, "A description of task number " + i + " with some more words");
+            task.setId((long) i + 1);
+            task.setCompleted(i % 3 == 0);
+            task.setVersion(i % 5);
+            task.setUpdatedAt(updatedAt.plusSeconds(i));
+            tasks.add(task);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeList(WireSize wireSize) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // The default level, as used by Tomcat's response compression
+        OutputStream out = gzip ? new GZIPOutputStream(bytes, 8192) : bytes;
+        taskStreamService.writeTasks(tasks.iterator(), out, format, selectedFields);
+        out.close();
+        wireSize.bytes = bytes.size();
+        return bytes.toByteArray();
+    }
+}
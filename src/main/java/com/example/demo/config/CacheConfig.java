@@ -0,0 +1,54 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+
+/*
+ * Enables the cache annotations on TaskRepository
+ * The caches themselves are configured through the spring.cache.* properties
+ *
+ * The cache runs before TaskLookupCoalescer, so cache hits never wait for a concurrent lookup
+ */
+@Configuration
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 2)
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+
+    /*
+     * The Caffeine cache manager Spring Boot would create, with caches which also keep replica reads,
+     * see ReplicaReadCacheManager. spring.cache.type=none still turns caching off, e.g. for the benchmarks
+     *
+     * @param replicaReadTtl    How long a Task read from a replica is served from the cache
+     * @param writeListener     Told about cache writes if present, e.g. TaskLookupCoalescer
+     */
+    @Bean
+    public CacheManager cacheManager(
+            CacheProperties cacheProperties,
+            @Value("${tasks.cache.replica-read-ttl:1s}") Duration replicaReadTtl,
+            ObjectProvider<ReplicaReadCacheManager.WriteListener> writeListener) {
+        if (cacheProperties.getType() == CacheType.NONE) {
+            return new NoOpCacheManager();
+        }
+        ReplicaReadCacheManager cacheManager = new ReplicaReadCacheManager(replicaReadTtl, writeListener.getIfAvailable());
+        String specification = cacheProperties.getCaffeine().getSpec();
+        if (StringUtils.hasText(specification)) {
+            cacheManager.setCacheSpecification(specification);
+        }
+        if (!cacheProperties.getCacheNames().isEmpty()) {
+            cacheManager.setCacheNames(cacheProperties.getCacheNames());
+        }
+        return cacheManager;
+    }
+}
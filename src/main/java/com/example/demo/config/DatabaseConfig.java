@@ -1,40 +1,80 @@
 package com.example.demo.config;
 
+import com.example.demo.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Profile;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class DatabaseConfig {
+    /*
+     * The pool settings (size, timeouts, leak detection and the PostgreSQL driver's
+     * statement cache through "data-source-properties") are bound from "database.pool.*"
+     *
+     * The connection settings come from the active profile's properties file (dev or docker),
+     * not from @Profile beans, so an AOT-processed build serves every profile
+     *
+     * With database.replicas.urls the primary and one pool per replica are put behind a
+     * ReplicaRoutingDataSource, the replicas get the same credentials and pool settings
+     */
     @Bean
-    @Profile("dev")
-    public DataSource devDataSource(
+    public DataSource dataSource(
+            Environment environment,
+            MeterRegistry meterRegistry,
             @Value("${database.url}") String url,
             @Value("${database.username}") String username,
-            @Value("${database.password}") String password) {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setUrl(url);
-        dataSource.setUsername(username);
-        dataSource.setPassword(password);
-        dataSource.setDriverClassName("org.postgresql.Driver");
-        return dataSource;
+            @Value("${database.password}") String password,
+            @Value("${database.replicas.urls}") List<String> replicaUrls,
+            @Value("${database.replicas.balancing}") ReplicaRoutingDataSource.Balancing balancing,
+            @Value("${database.replicas.max-lag}") Duration maxLag,
+            @Value("${database.replicas.lag-check-interval}") Duration lagCheckInterval,
+            @Value("${database.replicas.lag-query}") String lagQuery) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = createDataSource(binder, url, username, password);
+        if (replicaUrls.isEmpty()) {
+            return primary;
+        }
+
+        // Spring Boot only instruments a HikariDataSource bean, not the pools behind the routing DataSource
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = createDataSource(binder, replicaUrls.get(i).trim(), username, password);
+            replica.setPoolName(primary.getPoolName() + "-replica-" + (i + 1));
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, balancing, maxLag, lagCheckInterval, lagQuery,
+            meterRegistry);
     }
 
+    /*
+     * Streamed GET /tasks bodies are written on the async request executor, they keep the replica
+     * reads of their request
+     */
     @Bean
-    @Profile("docker")
-    public DataSource dockerDataSource(
-            @Value("${docker.database.url}") String url,
-            @Value("${docker.database.username}") String username,
-            @Value("${docker.database.password}") String password) {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setUrl(url);
+    public TaskDecorator replicaReadsTaskDecorator() {
+        return ReplicaRoutingDataSource::propagateReads;
+    }
+
+    private HikariDataSource createDataSource(Binder binder, String url, String username, String password) {
+        HikariDataSource dataSource = new HikariDataSource();
+        binder.bind("database.pool", Bindable.ofInstance(dataSource));
+        dataSource.setJdbcUrl(url);
         dataSource.setUsername(username);
         dataSource.setPassword(password);
-        dataSource.setDriverClassName("org.postgresql.Driver");
         return dataSource;
     }
 }
@@ -0,0 +1,18 @@
+package com.example.demo.config;
+
+import com.example.demo.metrics.StatementCountingInspector;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+    /*
+     * Hands the Spring managed StatementCountingInspector to Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer statementInspectorCustomizer(StatementCountingInspector inspector) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, inspector);
+    }
+}
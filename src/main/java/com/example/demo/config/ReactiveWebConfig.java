@@ -0,0 +1,41 @@
+package com.example.demo.config;
+
+import com.example.demo.dto.TaskListFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+
+/*
+ * Web server and codecs of the "reactive" profile
+ *
+ * Tomcat is on the classpath for the servlet stack and Spring Boot would prefer it for WebFlux too,
+ * Netty serves every connection from a few event loop threads instead
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(
+            ObjectProvider<NettyServerCustomizer> serverCustomizers) {
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        factory.getServerCustomizers().addAll(serverCustomizers.orderedStream().toList());
+        return factory;
+    }
+
+    // Like JacksonFormatsConfig: Smile with the same properties and dates as the JSON responses
+    @Bean
+    public CodecCustomizer smileCodecCustomizer(ObjectMapper objectMapper) {
+        ObjectMapper smileMapper = objectMapper.copyWith(new SmileFactory());
+        // Without explicit media types the encoder would only accept the JSON ones
+        return configurer -> configurer.defaultCodecs().jackson2SmileEncoder(
+            new Jackson2SmileEncoder(smileMapper, TaskListFormat.SMILE.getMediaType()));
+    }
+}
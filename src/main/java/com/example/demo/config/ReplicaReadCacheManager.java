@@ -0,0 +1,130 @@
+package com.example.demo.config;
+
+import com.example.demo.routing.ReplicaRoutingDataSource;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.time.Duration;
+
+/*
+ * CaffeineCacheManager whose caches may keep the results of replica reads without serving them too widely
+ *
+ * A value put while the current request may read a replica (see ReplicaRoutingDataSource.mayReadFromReplica)
+ * is stamped with the request's read freshness, the WAL position of its client's last write, which the read
+ * was at least as up to date as. It is only served to requests which need no newer position, and only for
+ * replicaReadTtl: like the replica read itself it may miss other clients' writes the replica hadn't replayed
+ * Requests outside replica reads, e.g. writes, never get it. Values put otherwise, e.g. by the @CachePut
+ * of a write, are served to everyone as before
+ *
+ * Every put, evict and clear is passed on to the WriteListener, see TaskLookupCoalescer
+ */
+public class ReplicaReadCacheManager extends CaffeineCacheManager {
+
+    /*
+     * Told about every change of a cache's values, before it's made
+     */
+    public interface WriteListener {
+
+        void written(String cacheName, Object key);
+
+        void writtenAll(String cacheName);
+    }
+
+    private static final WriteListener NO_LISTENER = new WriteListener() {
+        @Override
+        public void written(String cacheName, Object key) {
+        }
+
+        @Override
+        public void writtenAll(String cacheName) {
+        }
+    };
+
+    private final long replicaReadTtlNanos;
+    private final WriteListener writeListener;
+
+    public ReplicaReadCacheManager(Duration replicaReadTtl) {
+        this(replicaReadTtl, null);
+    }
+
+    public ReplicaReadCacheManager(Duration replicaReadTtl, WriteListener writeListener) {
+        this.replicaReadTtlNanos = replicaReadTtl.toNanos();
+        this.writeListener = writeListener != null ? writeListener : NO_LISTENER;
+    }
+
+    @Override
+    protected Cache adaptCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+        return new ReplicaReadCache(name, cache, isAllowNullValues(), replicaReadTtlNanos, writeListener);
+    }
+
+    /*
+     * Still a CaffeineCache, so the cache.* metrics are bound as for any other Caffeine cache
+     */
+    static class ReplicaReadCache extends CaffeineCache {
+
+        private final long replicaReadTtlNanos;
+        private final WriteListener writeListener;
+
+        ReplicaReadCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache,
+                boolean allowNullValues, long replicaReadTtlNanos, WriteListener writeListener) {
+            super(name, cache, allowNullValues);
+            this.replicaReadTtlNanos = replicaReadTtlNanos;
+            this.writeListener = writeListener;
+        }
+
+        @Override
+        protected Object lookup(Object key) {
+            Object value = super.lookup(key);
+            if (value instanceof ReplicaRead read) {
+                boolean current = System.nanoTime() - read.readAtNanos() < replicaReadTtlNanos;
+                return current && read.freshness() >= ReplicaRoutingDataSource.getReadFreshness() ? read.value() : null;
+            }
+            return value;
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            writeListener.written(getName(), key);
+            if (ReplicaRoutingDataSource.mayReadFromReplica()) {
+                getNativeCache().put(key, new ReplicaRead(toStoreValue(value),
+                    ReplicaRoutingDataSource.getReadFreshness(), System.nanoTime()));
+            } else {
+                super.put(key, value);
+            }
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            writeListener.written(getName(), key);
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void evict(Object key) {
+            writeListener.written(getName(), key);
+            super.evict(key);
+        }
+
+        @Override
+        public boolean evictIfPresent(Object key) {
+            writeListener.written(getName(), key);
+            return super.evictIfPresent(key);
+        }
+
+        @Override
+        public void clear() {
+            writeListener.writtenAll(getName());
+            super.clear();
+        }
+
+        @Override
+        public boolean invalidate() {
+            writeListener.writtenAll(getName());
+            return super.invalidate();
+        }
+    }
+
+    private record ReplicaRead(Object value, long freshness, long readAtNanos) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/*
+ * Enables the @Scheduled flush of TaskWriteBehindBuffer, the event heartbeats and the TaskTitleIndex rebuilds
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
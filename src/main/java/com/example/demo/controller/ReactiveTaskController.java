@@ -0,0 +1,539 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.TaskBatchResult;
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskFilter;
+import com.example.demo.dto.TaskListFormat;
+import com.example.demo.dto.TaskPage;
+import com.example.demo.dto.TaskPatch;
+import com.example.demo.dto.TaskStats;
+import com.example.demo.model.Task;
+import com.example.demo.repository.ReactiveTaskRepository;
+import com.example.demo.service.ReactiveTaskEventPublisher;
+import io.r2dbc.spi.R2dbcException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+ * The Task API on Spring WebFlux and R2DBC, active with the "reactive" profile instead of TaskController
+ *
+ * Same paths, validation, error bodies and status codes as TaskController, but no request holds a thread
+ * while it waits for the database. Left out for now: the write-behind buffer (a completion toggle is a plain
+ * update), CBOR for the full list, which WebFlux can't stream, and the GET /tasks/stream change feed.
+ * Writes are still announced with NOTIFY, so the servlet instances of a mixed deployment see them
+ */
+@RestController
+@RequestMapping("/tasks")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTaskController {
+
+    // PostgreSQL SQLState for unique_violation, raised by the unique constraint on the title
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final ReactiveTaskRepository taskRepository;
+    private final ReactiveTaskEventPublisher eventPublisher;
+
+    public ReactiveTaskController(ReactiveTaskRepository taskRepository, ReactiveTaskEventPublisher eventPublisher) {
+        this.taskRepository = taskRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /*
+     * Checks whether a failed write was rejected by the unique constraint on the title
+     *
+     * @param ex            The error signalled by the repository
+     * @return true if one of the causes is a unique_violation reported by the database
+     */
+    private boolean isDuplicateTitle(DataIntegrityViolationException ex){
+        for(Throwable cause = ex; cause != null; cause = cause.getCause()){
+            if(cause instanceof R2dbcException r2dbcException && UNIQUE_VIOLATION.equals(r2dbcException.getSqlState())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<ResponseEntity<?>> badRequest(Map<String, ?> errors){
+        return Mono.just(ResponseEntity
+            .status(HttpStatus.BAD_REQUEST)
+            .body(errors));
+    }
+
+    private Mono<ResponseEntity<?>> notFoundError(String text){
+        return Mono.just(ResponseEntity
+            .status(HttpStatus.NOT_FOUND)
+            .body(Map.of("error", text)));
+    }
+
+    /*
+     * Creates a new Task object
+     *
+     * @param task          The Task object to create
+     * @return the created Task with 201, or 400 with the errors if validation fails or the title is taken
+     */
+    @PostMapping
+    public Mono<ResponseEntity<?>> createTask(@RequestBody Task task) {
+        Map<String, String> errors = new HashMap<>();
+
+        TaskController.validateFields(task.getTitle(), "title", "Title is required", errors);
+        TaskController.validateFields(task.getDescription(), "description", "Description is required", errors);
+
+        if(!errors.isEmpty()){
+            return badRequest(errors);
+        }
+
+        return taskRepository.insert(task)
+            .flatMap(savedTask -> eventPublisher.publish(TaskEvent.created(savedTask))
+                .thenReturn(ResponseEntity.status(HttpStatus.CREATED).<Object>body(savedTask)))
+            .<ResponseEntity<?>>map(response -> response)
+            .onErrorResume(DataIntegrityViolationException.class, ex -> isDuplicateTitle(ex)
+                ? badRequest(Map.of("error", "Task Title already exists."))
+                : Mono.error(ex));
+    }
+
+    /*
+     * Creates many Tasks in one request, see TaskController.createTasks
+     *
+     * @param tasks         The Task objects to create
+     * @return one TaskBatchResult per item, 201 if all were created and 207 otherwise
+     */
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<?>> createTasks(@RequestBody List<Task> tasks) {
+        if(tasks.isEmpty() || tasks.size() > TaskController.MAX_BATCH_SIZE){
+            return badRequest(Map.of("error",
+                "A batch must contain between 1 and " + TaskController.MAX_BATCH_SIZE + " tasks."));
+        }
+
+        TaskBatchResult[] results = new TaskBatchResult[tasks.size()];
+        Set<String> batchTitles = new HashSet<>();
+
+        for(int i = 0; i < tasks.size(); i++){
+            Task task = tasks.get(i);
+            Map<String, String> errors = new HashMap<>();
+
+            TaskController.validateFields(task.getTitle(), "title", "Title is required", errors);
+            TaskController.validateFields(task.getDescription(), "description", "Description is required", errors);
+
+            if(errors.isEmpty() && !batchTitles.add(task.getTitle())){
+                errors.put("error", "Task Title already exists.");
+            }
+            if(!errors.isEmpty()){
+                results[i] = TaskBatchResult.rejected(i, errors);
+            }
+        }
+
+        Mono<Set<String>> existingTitles = batchTitles.isEmpty()
+            ? Mono.just(Set.of())
+            : taskRepository.findExistingTitles(batchTitles).collect(HashSet::new, Set::add);
+
+        return existingTitles.flatMap(existing -> {
+            List<Task> toSave = new ArrayList<>();
+            List<Integer> toSaveIndexes = new ArrayList<>();
+            for(int i = 0; i < tasks.size(); i++){
+                if(results[i] != null){
+                    continue;
+                }
+                if(existing.contains(tasks.get(i).getTitle())){
+                    results[i] = TaskBatchResult.rejected(i, Map.of("error", "Task Title already exists."));
+                    continue;
+                }
+                toSave.add(tasks.get(i));
+                toSaveIndexes.add(i);
+            }
+
+            HttpStatus status = toSave.size() == tasks.size() ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+            if(toSave.isEmpty()){
+                return Mono.just(ResponseEntity.status(status).body(List.of(results)));
+            }
+            return taskRepository.insertAll(toSave)
+                .collectList()
+                .flatMap(savedTasks -> {
+                    List<TaskEvent> events = new ArrayList<>(savedTasks.size());
+                    for(int i = 0; i < savedTasks.size(); i++){
+                        int index = toSaveIndexes.get(i);
+                        results[index] = TaskBatchResult.created(index, savedTasks.get(i));
+                        events.add(TaskEvent.created(savedTasks.get(i)));
+                    }
+                    return eventPublisher.publish(events)
+                        .thenReturn(ResponseEntity.status(status).body(List.of(results)));
+                });
+        })
+        .<ResponseEntity<?>>map(response -> response)
+        // A concurrent request took one of the titles after the check, nothing was inserted
+        .onErrorResume(DataIntegrityViolationException.class, ex -> isDuplicateTitle(ex)
+            ? badRequest(Map.of("error", "Task Title already exists."))
+            : Mono.error(ex));
+    }
+
+    /*
+     * Retrieves all Tasks ordered by id
+     *
+     * The Tasks are written while they are read: the Flux only requests rows from the database as fast
+     * as the client takes them, as a JSON array by default, as NDJSON or Smile when the client prefers
+     * application/x-ndjson or application/x-jackson-smile. With "fields" only the selected columns are read
+     *
+     * The weak ETag and Last-Modified are those of TaskController.getAllTasks, a matching If-None-Match
+     * or If-Modified-Since gets a 304 without any Task being read
+     *
+     * @param accept        The Accept header of the request, used for the ETag of the format
+     * @param fields        The comma separated properties to return, e.g. "id,title", or null for all
+     * @return a ResponseEntity with the streamed Tasks or a 400 if a field is unknown
+     */
+    @GetMapping(params = {"!after", "!limit", "!completed", "!titlePrefix", "!q", "!ids"},
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, "application/x-jackson-smile"})
+    public Mono<ResponseEntity<?>> getAllTasks(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(required = false) String fields){
+        List<TaskField> selectedFields = null;
+        if(fields != null){
+            selectedFields = TaskController.parseFields(fields);
+            if(selectedFields == null){
+                return Mono.just(ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("fields",
+                        "Fields must be a comma separated list of: id, title, description, completed, version, updatedAt")));
+            }
+        }
+        TaskListFormat format = TaskListFormat.negotiate(accept);
+        List<TaskField> writtenFields = selectedFields;
+
+        // The response handler compares the validators with the request, the Flux isn't subscribed on a 304
+        return taskRepository.findListVersion().map(listVersion -> {
+            StringBuilder eTag = new StringBuilder("W/\"").append(listVersion.getETag()).append(format.getETagSuffix());
+            if(writtenFields != null){
+                writtenFields.forEach(field -> eTag.append('.').append(field.getProperty()));
+            }
+            eTag.append('"');
+
+            Flux<?> body = writtenFields == null
+                ? taskRepository.findAllOrderedById()
+                : taskRepository.findAllOrderedById(writtenFields);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(format.getMediaType())
+                .eTag(eTag.toString());
+            if(listVersion.getLastModified() != null){
+                response.lastModified(listVersion.getLastModified());
+            }
+            return response.body(body);
+        });
+    }
+
+    /*
+     * Retrieves one keyset page of Tasks ordered by id, optionally filtered
+     *
+     * @param after         Only Tasks with an id greater than this cursor are returned
+     * @param limit         The maximum number of Tasks in the page
+     * @param completed     Only Tasks with this completed flag are returned
+     * @param titlePrefix   Only Tasks whose title starts with this text are returned
+     * @param q             Only Tasks whose description contains all these words are returned
+     * @return a TaskPage or an error message if the limit is invalid
+     */
+    @GetMapping
+    public Mono<ResponseEntity<?>> getTaskPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Boolean completed,
+            @RequestParam(required = false) String titlePrefix,
+            @RequestParam(required = false) String q){
+        int pageSize = limit == null ? TaskController.DEFAULT_PAGE_SIZE : limit;
+        if(pageSize < 1 || pageSize > TaskController.MAX_PAGE_SIZE){
+            return badRequest(Map.of("limit", "Limit must be between 1 and " + TaskController.MAX_PAGE_SIZE));
+        }
+
+        long cursor = after == null ? 0L : after;
+        TaskFilter filter = new TaskFilter(completed, TaskController.blankToNull(titlePrefix),
+            TaskController.blankToNull(q));
+        // One extra row tells whether there is a next page
+        return taskRepository.search(filter, cursor, pageSize + 1)
+            .collectList()
+            .map(tasks -> {
+                boolean hasNext = tasks.size() > pageSize;
+                List<Task> page = hasNext ? tasks.subList(0, pageSize) : tasks;
+                Long nextCursor = hasNext ? page.get(page.size() - 1).getId() : null;
+                return ResponseEntity.ok(new TaskPage(page, nextCursor));
+            });
+    }
+
+    /*
+     * Retrieves a specific task by its ID
+     *
+     * The version is the ETag and updatedAt the Last-Modified, a request whose validators still
+     * match gets a 304 Not Modified without the Task being serialized
+     *
+     * @param id            The id of the Task to retrieve
+     * @return the Task if found or an error message if not
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<?>> getTaskById(@PathVariable Long id) {
+        return taskRepository.findById(id)
+            .<ResponseEntity<?>>map(task -> ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(Long.toString(task.getVersion()))
+                .lastModified(task.getUpdatedAt())
+                .body(task))
+            .switchIfEmpty(notFoundError("Task with ID: " + id + " couldn't be found. Task doesn't exist."));
+    }
+
+    /*
+     * Retrieves several Tasks by their ids with a single query, see TaskController.getTasksByIds
+     *
+     * @param ids           The comma separated ids of the Tasks to retrieve
+     * @return a ResponseEntity with one TaskBatchResult per id, see findTasks
+     */
+    @GetMapping(params = "ids")
+    public Mono<ResponseEntity<?>> getTasksByIds(@RequestParam String ids){
+        List<Long> parsedIds = TaskController.parseIds(ids);
+        if(parsedIds == null){
+            return badRequest(Map.of("ids", "Ids must be a comma separated list of task ids"));
+        }
+        return findTasks(parsedIds);
+    }
+
+    /*
+     * Retrieves several Tasks by their ids like GET /tasks?ids=, for id lists too long for a URL
+     *
+     * @param ids           The ids of the Tasks to retrieve, a JSON array
+     * @return a ResponseEntity with one TaskBatchResult per id, see findTasks
+     */
+    @PostMapping("/lookup")
+    public Mono<ResponseEntity<?>> lookupTasks(@RequestBody List<Long> ids){
+        if(ids.stream().anyMatch(Objects::isNull)){
+            return badRequest(Map.of("ids", "Ids must be a list of task ids"));
+        }
+        return findTasks(ids);
+    }
+
+    /*
+     * Looks up all ids with one query and answers them in the order of the request, see TaskController.findTasks
+     *
+     * @param ids           The ids to look up, may repeat
+     * @return a ResponseEntity with one TaskBatchResult per id, 200 if all were found and 207 otherwise
+     */
+    private Mono<ResponseEntity<?>> findTasks(List<Long> ids){
+        if(ids.isEmpty() || ids.size() > TaskController.MAX_LOOKUP_SIZE){
+            return badRequest(Map.of("ids",
+                "Between 1 and " + TaskController.MAX_LOOKUP_SIZE + " ids can be looked up at once"));
+        }
+
+        return taskRepository.findAllByIds(new HashSet<>(ids))
+            .collectMap(Task::getId)
+            .<ResponseEntity<?>>map(tasksById -> {
+                List<TaskBatchResult> results = new ArrayList<>(ids.size());
+                boolean allFound = true;
+                for(int i = 0; i < ids.size(); i++){
+                    Long id = ids.get(i);
+                    Task task = tasksById.get(id);
+                    if(task == null){
+                        results.add(TaskBatchResult.notFound(i,
+                            Map.of("error", "Task with ID: " + id + " couldn't be found. Task doesn't exist.")));
+                        allFound = false;
+                    } else {
+                        results.add(TaskBatchResult.found(i, task));
+                    }
+                }
+                return ResponseEntity.status(allFound ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(results);
+            });
+    }
+
+    /*
+     * Retrieves the number of Tasks, completed and pending, see TaskController.getTaskStats
+     *
+     * @return a ResponseEntity with the TaskStats
+     */
+    @GetMapping("/stats")
+    public Mono<ResponseEntity<TaskStats>> getTaskStats(){
+        return taskRepository.findStats().map(ResponseEntity::ok);
+    }
+
+    /*
+     * Updates an existing Task, see TaskController.updateTask
+     *
+     * @param id            The id of the Task to updated
+     * @param updates       A Map containing the fields to update and their new values
+     * @return the updated Task, 400 if a value is invalid, 404 if the Task doesn't exist
+     *         or 409 if it was changed by another request in the meantime
+     */
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<?>> updateTask(@PathVariable Long id, @RequestBody Map<String, Object> updates){
+        return taskRepository.findById(id)
+            .flatMap(task -> {
+                Map<String, String> errors = new HashMap<>();
+                Task updateTask = task.copy();
+
+                if(updates.containsKey("title")){
+                    String title = updates.get("title").toString().trim();
+                    if(title.isEmpty()){
+                        errors.put("title", "Title cannot be empty");
+                    } else {
+                        updateTask.setTitle(title);
+                    }
+                }
+
+                if(updates.containsKey("description")){
+                    String description = updates.get("description").toString().trim();
+                    if(description.isEmpty()){
+                        errors.put("description", "Description cannot be empty");
+                    } else {
+                        updateTask.setDescription(description);
+                    }
+                }
+
+                if(updates.containsKey("completed")){
+                    if(updates.get("completed") instanceof Boolean) {
+                        updateTask.setCompleted((Boolean) updates.get("completed"));
+                    } else {
+                        errors.put("completed", "Completed must be a boolean value.");
+                    }
+                }
+
+                if(!errors.isEmpty()){
+                    return badRequest(errors);
+                }
+
+                return taskRepository.update(updateTask, task.getVersion())
+                    .flatMap(updatedTask -> eventPublisher.publish(TaskEvent.updated(updatedTask))
+                        .thenReturn(ResponseEntity.ok().<Object>body(updatedTask)))
+                    .<ResponseEntity<?>>map(response -> response)
+                    .switchIfEmpty(Mono.just(ResponseEntity
+                        .status(HttpStatus.CONFLICT)
+                        .body(Map.of("error", "Task with ID: " + id + " was changed by another request. Please retry."))))
+                    .onErrorResume(DataIntegrityViolationException.class, ex -> isDuplicateTitle(ex)
+                        ? badRequest(Map.of("title", "Title with name: " + updateTask.getTitle() + " already exists."))
+                        : Mono.error(ex));
+            })
+            .switchIfEmpty(notFoundError("Task with ID: " + id + " couldn't be updated. Task doesn't exist."));
+    }
+
+    /*
+     * Partially updates an existing Task with a single UPDATE statement, see TaskController.patchTask
+     *
+     * @param id            The id of the Task to update
+     * @param patch         The fields to change, null fields are left unchanged
+     * @param ifMatch       The optional If-Match header
+     * @return the updated Task and its new ETag, or an error message if not
+     */
+    @PatchMapping("/{id}")
+    public Mono<ResponseEntity<?>> patchTask(
+            @PathVariable Long id,
+            @RequestBody TaskPatch patch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        Map<String, String> errors = new HashMap<>();
+
+        if(patch.isEmpty()){
+            errors.put("error", "At least one of title, description or completed is required.");
+        }
+        if(patch.getTitle() != null){
+            TaskController.validateFields(patch.getTitle(), "title", "Title cannot be empty", errors);
+            patch.setTitle(patch.getTitle().trim());
+        }
+        if(patch.getDescription() != null){
+            TaskController.validateFields(patch.getDescription(), "description", "Description cannot be empty", errors);
+            patch.setDescription(patch.getDescription().trim());
+        }
+
+        if(!errors.isEmpty()){
+            return badRequest(errors);
+        }
+
+        Long expectedVersion = TaskController.parseIfMatch(ifMatch);
+        if(expectedVersion != null && expectedVersion < 0){
+            return Mono.just(ResponseEntity
+                .status(HttpStatus.PRECONDITION_FAILED)
+                .body(Map.of("error", "If-Match: " + ifMatch + " can't match the version of a Task.")));
+        }
+        // Nothing was updated: only look the Task up to tell a version mismatch from a missing Task
+        Mono<ResponseEntity<?>> notUpdated = expectedVersion == null
+            ? notFoundError("Task with ID: " + id + " couldn't be updated. Task doesn't exist.")
+            : taskRepository.existsById(id).flatMap(exists -> exists
+                ? Mono.just(ResponseEntity
+                    .status(HttpStatus.PRECONDITION_FAILED)
+                    .body(Map.of("error", "Task with ID: " + id + " doesn't match the If-Match version.")))
+                : notFoundError("Task with ID: " + id + " couldn't be updated. Task doesn't exist."));
+
+        return taskRepository.patch(id, patch, expectedVersion)
+            .flatMap(task -> eventPublisher.publish(TaskEvent.updated(task))
+                .thenReturn(ResponseEntity.ok()
+                    .eTag(Long.toString(task.getVersion()))
+                    .<Object>body(task)))
+            .<ResponseEntity<?>>map(response -> response)
+            .switchIfEmpty(Mono.defer(() -> notUpdated))
+            .onErrorResume(DataIntegrityViolationException.class, ex -> isDuplicateTitle(ex)
+                ? badRequest(Map.of("title", "Title with name: " + patch.getTitle() + " already exists."))
+                : Mono.error(ex));
+    }
+
+    /*
+     * Deleted a specific task by its ID
+     *
+     * @param id            The id of the task to delete
+     * @return a success message if deletion is successful or an error message if not
+     */
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<?>> deleteTask(@PathVariable Long id) {
+        return taskRepository.deleteById(id)
+            .flatMap(deleted -> deleted > 0
+                ? eventPublisher.publish(TaskEvent.deleted(id))
+                    .thenReturn(ResponseEntity.ok(Map.of("success", "Deleted Task with ID: " + id)))
+                : notFoundError("Task with ID: " + id + " couldn't be deleted. Task doesn't exist."));
+    }
+
+    /*
+     * Deletes several tasks with a single statement, either by id or by their completed flag
+     *
+     * @param ids           The ids of the tasks to delete, at most MAX_BATCH_SIZE
+     * @param completed     Deletes all tasks with this completed flag
+     * @return the number of deleted tasks, or an error message if no valid filter was given
+     */
+    @DeleteMapping
+    public Mono<ResponseEntity<?>> deleteTasks(
+            @RequestParam(required = false) List<Long> ids,
+            @RequestParam(required = false) Boolean completed) {
+        // Never fall back to deleting every task
+        if ((ids == null) == (completed == null)) {
+            return badRequest(Map.of("error", "Exactly one of the parameters 'ids' or 'completed' is required."));
+        }
+
+        Mono<Long> deleted;
+        if (ids != null) {
+            Set<Long> uniqueIds = new HashSet<>(ids);
+            uniqueIds.remove(null);
+            if (uniqueIds.isEmpty() || uniqueIds.size() > TaskController.MAX_BATCH_SIZE) {
+                return badRequest(Map.of("ids",
+                    "Between 1 and " + TaskController.MAX_BATCH_SIZE + " ids are allowed per request."));
+            }
+            // Subscribers only hear about the ids which existed
+            deleted = taskRepository.deleteAllByIds(uniqueIds)
+                .flatMap(deletedIds -> eventPublisher.publish(deletedIds.stream().map(TaskEvent::deleted).toList())
+                    .thenReturn((long) deletedIds.size()));
+        } else {
+            deleted = taskRepository.deleteAllByCompleted(completed)
+                .flatMap(count -> count > 0
+                    ? eventPublisher.publish(TaskEvent.deletedByCompleted(completed)).thenReturn(count)
+                    : Mono.just(count));
+        }
+
+        return deleted.map(count -> ResponseEntity.ok(Map.of(
+            "success", "Deleted " + count + " Task(s).",
+            "deleted", count.intValue())));
+    }
+}
@@ -1,24 +1,104 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.TaskBatchResult;
+import com.example.demo.dto.TaskCopyFormat;
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskListFormat;
+import com.example.demo.dto.TaskFilter;
+import com.example.demo.dto.TaskImport;
+import com.example.demo.dto.TaskListVersion;
+import com.example.demo.dto.TaskPage;
+import com.example.demo.dto.TaskPatch;
+import com.example.demo.dto.TaskStats;
 import com.example.demo.model.Task;
 import com.example.demo.repository.TaskRepository;
+import com.example.demo.service.TaskCopyService;
+import com.example.demo.service.TaskEventBroadcaster;
+import com.example.demo.service.TaskEventPublisher;
+import com.example.demo.service.TaskStreamService;
+import com.example.demo.service.TaskTitleIndex;
+import com.example.demo.service.TaskWriteBehindBuffer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.http.ResponseEntity;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
+// The Spring MVC Task API, ReactiveTaskController replaces it with the "reactive" profile
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 @RequestMapping("/tasks")
 public class TaskController {
+
+    // Upper bound for the "limit" query parameter of a keyset page
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    // Upper bound for the number of Tasks in one POST /tasks/batch request
+    static final int MAX_BATCH_SIZE = 5000;
+
+    // Inserts of one POST /tasks/batch request before it gives up on titles taken concurrently
+    static final int MAX_BATCH_ATTEMPTS = 3;
+
+    // Upper bound for the number of ids in one GET /tasks?ids= or POST /tasks/lookup request
+    static final int MAX_LOOKUP_SIZE = 5000;
+
+    // Writes the error body of GET /tasks, which has a streaming response type
+    private static final ObjectWriter ERROR_WRITER = new ObjectMapper().writer()
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    // PostgreSQL SQLState for unique_violation, raised by the unique constraint on the title
+    private static final String UNIQUE_VIOLATION = "23505";
     
     private final TaskRepository taskRepository;
+    private final TaskStreamService taskStreamService;
+    private final TaskWriteBehindBuffer writeBehindBuffer;
+    private final TaskEventPublisher eventPublisher;
+    private final TaskEventBroadcaster eventBroadcaster;
+    private final TaskTitleIndex titleIndex;
+    private final TaskCopyService taskCopyService;
 
-    public TaskController(TaskRepository taskRepository) {
+    public TaskController(TaskRepository taskRepository, TaskStreamService taskStreamService,
+                          TaskWriteBehindBuffer writeBehindBuffer, TaskEventPublisher eventPublisher,
+                          TaskEventBroadcaster eventBroadcaster, TaskTitleIndex titleIndex,
+                          TaskCopyService taskCopyService) {
         this.taskRepository = taskRepository;
+        this.taskStreamService = taskStreamService;
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.eventPublisher = eventPublisher;
+        this.eventBroadcaster = eventBroadcaster;
+        this.titleIndex = titleIndex;
+        this.taskCopyService = taskCopyService;
     }
 
     /*
@@ -29,7 +109,7 @@ public class TaskController {
      * @param errorMessage  The error message to add if the validation fails 
      * @param errors        The map where the error message(s) will be stored
      */
-    private void validateFields(String value, String fieldName, String errorMessage, Map<String, String> errors){
+    static void validateFields(String value, String fieldName, String errorMessage, Map<String, String> errors){
         if(value == null || value.trim().isEmpty()){
             errors.put(fieldName, errorMessage);
         }
@@ -45,6 +125,97 @@ public class TaskController {
         return taskRepository.findById(id);
     }
 
+    /*
+     * Checks whether a failed write was rejected by the unique constraint on the title
+     * 
+     * @param ex            The exception thrown by the repository
+     * @return true if one of the causes is a unique_violation reported by the database
+     */
+    private boolean isDuplicateTitle(DataIntegrityViolationException ex){
+        for(Throwable cause = ex; cause != null; cause = cause.getCause()){
+            if(cause instanceof SQLException sqlException && UNIQUE_VIOLATION.equals(sqlException.getSQLState())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Reads the version from an If-Match header
+     * 
+     * Versions are strong validators, so a weak tag (W/"3"), a list of tags or anything else
+     * that isn't a single non-negative version can never match and is reported as -1
+     * 
+     * @param ifMatch       The header value, e.g. "3"
+     * @return the version, null for "*" or a missing header, or -1 if the value can't match any version
+     */
+    static Long parseIfMatch(String ifMatch){
+        if(ifMatch == null || ifMatch.trim().equals("*")){
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if(tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")){
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        try {
+            long version = Long.parseLong(tag);
+            return version < 0 ? -1L : version;
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+    private static long toEpochMillis(Instant instant){
+        return instant == null ? -1 : instant.toEpochMilli();
+    }
+
+    /*
+     * Reads the "fields" parameter of GET /tasks
+     * 
+     * @param fields        The comma separated properties, e.g. "id,title"
+     * @return the fields in the order of the Task properties, or null if one is unknown or none is given
+     */
+    static List<TaskField> parseFields(String fields){
+        Set<TaskField> selected = EnumSet.noneOf(TaskField.class);
+        for(String property : fields.split(",")){
+            if(property.isBlank()){
+                continue;
+            }
+            Optional<TaskField> field = TaskField.fromProperty(property.trim());
+            if(field.isEmpty()){
+                return null;
+            }
+            selected.add(field.get());
+        }
+        return selected.isEmpty() ? null : List.copyOf(selected);
+    }
+
+    /*
+     * Reads the "ids" parameter of GET /tasks
+     * 
+     * @param ids           The comma separated Task ids, e.g. "1,2,3"
+     * @return the ids in the given order, or null if one is not a number or none is given
+     */
+    static List<Long> parseIds(String ids){
+        List<Long> parsed = new ArrayList<>();
+        for(String id : ids.split(",")){
+            if(id.isBlank()){
+                continue;
+            }
+            try {
+                parsed.add(Long.valueOf(id.trim()));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        return parsed.isEmpty() ? null : parsed;
+    }
+
+    // Empty filter parameters are treated as absent
+    static String blankToNull(String value){
+        return value == null || value.isBlank() ? null : value;
+    }
+
     /*
      * Returns a ResponseEntity representing a 404 Not Found error with a custom error message
      * 
@@ -89,34 +260,246 @@ public class TaskController {
                 .body(errors);
         }
 
-        if(taskRepository.existsByTitle(task.getTitle())){
+        // The unique constraint on the title is checked by the INSERT itself, which saves a
+        // SELECT per create and stays correct when two requests race for the same title
+        task.setId(null);
+        try {
+            Task savedTask = taskRepository.saveAndFlush(task);
+            titleIndex.add(savedTask.getTitle());
+            eventPublisher.publish(TaskEvent.created(savedTask));
+            return ResponseEntity.status(HttpStatus.CREATED).body(savedTask);
+        } catch (DataIntegrityViolationException ex) {
+            if(!isDuplicateTitle(ex)){
+                throw ex;
+            }
             return ResponseEntity
             .status(HttpStatus.BAD_REQUEST)
             .body(Map.of("error", "Task Title already exists."));
         }
+    }
+
+    /*
+     * Creates many Tasks in one request
+     * 
+     * Every item is validated like in createTask, the titles are checked against the database with a single query
+     * and the valid Tasks are inserted in one transaction using JDBC batching.
+     * Titles the TaskTitleIndex knows to be free are left out of the query. If one of them was taken after all,
+     * e.g. by another instance since the index was loaded, the insert fails and is retried after checking them too
+     * A title taken by a concurrent request after the check fails the insert as well, it is retried after
+     * checking all remaining titles again, so the taken ones are rejected individually
+     * 
+     * @param tasks         The Task objects to create
+     * @return a ResponseEntity with one TaskBatchResult per item, 201 if all were created and 207 otherwise
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createTasks(@RequestBody List<Task> tasks) {
+        if(tasks.isEmpty() || tasks.size() > MAX_BATCH_SIZE){
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", "A batch must contain between 1 and " + MAX_BATCH_SIZE + " tasks."));
+        }
+
+        TaskBatchResult[] results = new TaskBatchResult[tasks.size()];
+        Set<String> batchTitles = new HashSet<>();
+
+        for(int i = 0; i < tasks.size(); i++){
+            Task task = tasks.get(i);
+            Map<String, String> errors = new HashMap<>();
+
+            validateFields(task.getTitle(), "title", "Title is required", errors);
+            validateFields(task.getDescription(), "description", "Description is required", errors);
+
+            if(errors.isEmpty() && !batchTitles.add(task.getTitle())){
+                errors.put("error", "Task Title already exists.");
+            }
+            if(!errors.isEmpty()){
+                results[i] = TaskBatchResult.rejected(i, errors);
+            }
+        }
 
-        Task savedTask = taskRepository.save(task);
-        return ResponseEntity.status(HttpStatus.CREATED).body(savedTask);
+        Set<String> titlesToCheck = new HashSet<>();
+        Set<String> skippedTitles = new HashSet<>();
+        for(String title : batchTitles){
+            (titleIndex.isAbsent(title) ? skippedTitles : titlesToCheck).add(title);
+        }
+
+        List<Task> toSave;
+        List<Integer> toSaveIndexes;
+        List<Task> savedTasks = List.of();
+        int attempts = 0;
+        while(true){
+            Set<String> existingTitles = titlesToCheck.isEmpty()
+                ? Set.of()
+                : new HashSet<>(taskRepository.findExistingTitles(titlesToCheck));
+
+            toSave = new ArrayList<>();
+            toSaveIndexes = new ArrayList<>();
+            for(int i = 0; i < tasks.size(); i++){
+                if(results[i] != null){
+                    continue;
+                }
+                Task task = tasks.get(i);
+                if(existingTitles.contains(task.getTitle())){
+                    results[i] = TaskBatchResult.rejected(i, Map.of("error", "Task Title already exists."));
+                    continue;
+                }
+                // Ids are always generated, an id in the request must not turn the insert into an update
+                task.setId(null);
+                toSave.add(task);
+                toSaveIndexes.add(i);
+            }
+            if(toSave.isEmpty()){
+                break;
+            }
+
+            try {
+                savedTasks = taskRepository.saveAll(toSave);
+                break;
+            } catch (DataIntegrityViolationException ex) {
+                if(!isDuplicateTitle(ex)){
+                    throw ex;
+                }
+                // Nothing was inserted. Either the index missed a taken title and the skipped ones are checked now,
+                // or a concurrent request took a title after the check and all remaining ones are checked again
+                if(++attempts == MAX_BATCH_ATTEMPTS){
+                    return ResponseEntity
+                        .status(HttpStatus.CONFLICT)
+                        .body(Map.of("error", "Titles of the batch are being taken concurrently, retry the request."));
+                }
+                if(!skippedTitles.isEmpty()){
+                    titleIndex.markStale();
+                    titlesToCheck = skippedTitles;
+                    skippedTitles = Set.of();
+                } else {
+                    titlesToCheck = new HashSet<>();
+                    for(Task task : toSave){
+                        titlesToCheck.add(task.getTitle());
+                    }
+                }
+            }
+        }
+
+        if(!savedTasks.isEmpty()){
+            List<TaskEvent> events = new ArrayList<>(savedTasks.size());
+            for(int i = 0; i < savedTasks.size(); i++){
+                int index = toSaveIndexes.get(i);
+                results[index] = TaskBatchResult.created(index, savedTasks.get(i));
+                titleIndex.add(savedTasks.get(i).getTitle());
+                events.add(TaskEvent.created(savedTasks.get(i)));
+            }
+            eventPublisher.publish(events);
+        }
+
+        HttpStatus status = toSave.size() == tasks.size() ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(List.of(results));
     }
 
     /*
-     * Retrieves all Tasks
+     * Retrieves all Tasks ordered by id
+     * 
+     * The Tasks are streamed straight from the database to the response, as a JSON array by default,
+     * as NDJSON, Smile or CBOR when the client prefers application/x-ndjson, application/x-jackson-smile
+     * or application/cbor. With "fields" only the selected properties are read and written
      * 
-     * @return a List of all Task objects
+     * The ETag and Last-Modified come from one aggregate query (count, version sum, newest updatedAt),
+     * so a client which already has the current list gets a 304 without any Task being read
+     * The ETag is weak: it stays the same when the response is compressed
+     * 
+     * @param accept        The Accept header of the request, used to choose the format
+     * @param fields        The comma separated properties to return, e.g. "id,title", or null for all
+     * @param request       The request, for its If-None-Match and If-Modified-Since headers
+     * @return a ResponseEntity which writes the Tasks while they are read, a 304 Not Modified
+     *         or a 400 if a field is unknown
+     */
+    @GetMapping(params = {"!after", "!limit", "!completed", "!titlePrefix", "!q", "!ids"})
+    public ResponseEntity<StreamingResponseBody> getAllTasks(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(required = false) String fields,
+            WebRequest request){
+        List<TaskField> selectedFields = null;
+        if(fields != null){
+            selectedFields = parseFields(fields);
+            if(selectedFields == null){
+                Map<String, String> errors = Map.of("fields",
+                    "Fields must be a comma separated list of: id, title, description, completed, version, updatedAt");
+                return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> ERROR_WRITER.writeValue(out, errors));
+            }
+        }
+        TaskListFormat format = TaskListFormat.negotiate(accept);
+
+        // Every format and field selection is a different representation with its own ETag
+        TaskListVersion listVersion = taskRepository.findListVersion();
+        StringBuilder eTag = new StringBuilder("W/\"").append(listVersion.getETag()).append(format.getETagSuffix());
+        if(selectedFields != null){
+            selectedFields.forEach(field -> eTag.append('.').append(field.getProperty()));
+        }
+        eTag.append('"');
+        long lastModified = toEpochMillis(listVersion.getLastModified());
+        // checkNotModified writes ETag and Last-Modified to the response itself, the entity must not repeat them
+        if(request.checkNotModified(eTag.toString(), lastModified)){
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .varyBy(HttpHeaders.ACCEPT)
+                .build();
+        }
+
+        List<TaskField> writtenFields = selectedFields;
+        StreamingResponseBody body = out -> taskStreamService.writeTasks(out, format, writtenFields);
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT)
+            .contentType(format.getMediaType())
+            .body(body);
+    }
+
+    /*
+     * Retrieves one keyset page of Tasks ordered by id, optionally filtered
+     * 
+     * @param after         Only Tasks with an id greater than this cursor are returned
+     * @param limit         The maximum number of Tasks in the page
+     * @param completed     Only Tasks with this completed flag are returned
+     * @param titlePrefix   Only Tasks whose title starts with this text are returned
+     * @param q             Only Tasks whose description contains all these words are returned
+     * @return a ResponseEntity with a TaskPage or an error message if the limit is invalid
      */
     @GetMapping
-    public List<Task> getAllTasks(){
-        return taskRepository.findAll();
+    public ResponseEntity<?> getTaskPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Boolean completed,
+            @RequestParam(required = false) String titlePrefix,
+            @RequestParam(required = false) String q){
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if(pageSize < 1 || pageSize > MAX_PAGE_SIZE){
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("limit", "Limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+
+        long cursor = after == null ? 0L : after;
+        TaskFilter filter = new TaskFilter(completed, blankToNull(titlePrefix), blankToNull(q));
+        Slice<Task> slice = filter.isEmpty()
+            ? taskRepository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.ofSize(pageSize))
+            : taskRepository.search(filter, cursor, pageSize);
+        List<Task> tasks = slice.getContent();
+        Long nextCursor = slice.hasNext() ? tasks.get(tasks.size() - 1).getId() : null;
+        return ResponseEntity.ok(new TaskPage(tasks, nextCursor));
     }
 
     /*
      * Retrieves a specific task by its ID
      * 
+     * Answers 304 Not Modified when the If-None-Match (version) or If-Modified-Since (updatedAt)
+     * validators of the request still match, without serializing the Task
+     * 
      * @param id            The id of the Task to retrieve
+     * @param request       The request, for its If-None-Match and If-Modified-Since headers
      * @return a ResponseEntity containing the Task if found or an error message if not 
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getTaskById(@PathVariable Long id) { 
+    public ResponseEntity<?> getTaskById(@PathVariable Long id, WebRequest request) { 
         /*
          * Documentation for myself: 
          * Optional<T> is a container object which may or may not contain a non-null value.
@@ -130,33 +513,285 @@ public class TaskController {
         Optional<Task> task = findTask(id);
         
         if (task.isPresent()) {
-            return ResponseEntity.ok(task.get());
+            // A completion toggle which isn't written yet: show it, without an ETag as the version will still change
+            Optional<Boolean> pendingCompleted = writeBehindBuffer.pending(id);
+            if (pendingCompleted.isPresent()) {
+                Task pendingTask = task.get().copy();
+                pendingTask.setCompleted(pendingCompleted.get());
+                return ResponseEntity.ok(pendingTask);
+            }
+
+            String eTag = Long.toString(task.get().getVersion());
+            long lastModified = toEpochMillis(task.get().getUpdatedAt());
+            if (request.checkNotModified(eTag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+            }
+            // Clients have to revalidate before reusing the Task
+            return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .body(task.get());
         } 
         
-        return notFoundError("Task with ID: " + id + " couldn't be found. Task doesn't exist.");
+        return notFoundError(taskNotFoundMessage(id));
     }    
 
+    private static String taskNotFoundMessage(Long id){
+        return "Task with ID: " + id + " couldn't be found. Task doesn't exist.";
+    }
+
+    /*
+     * Retrieves several Tasks by their ids with a single query, instead of one GET /tasks/{id} each
+     * 
+     * @param ids           The comma separated ids of the Tasks to retrieve
+     * @return a ResponseEntity with one TaskBatchResult per id, see findTasks
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<?> getTasksByIds(@RequestParam String ids){
+        List<Long> parsedIds = parseIds(ids);
+        if(parsedIds == null){
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("ids", "Ids must be a comma separated list of task ids"));
+        }
+        return findTasks(parsedIds);
+    }
+
+    /*
+     * Retrieves several Tasks by their ids like GET /tasks?ids=, for id lists too long for a URL
+     * 
+     * @param ids           The ids of the Tasks to retrieve, a JSON array
+     * @return a ResponseEntity with one TaskBatchResult per id, see findTasks
+     */
+    @PostMapping("/lookup")
+    public ResponseEntity<?> lookupTasks(@RequestBody List<Long> ids){
+        if(ids.stream().anyMatch(Objects::isNull)){
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("ids", "Ids must be a list of task ids"));
+        }
+        return findTasks(ids);
+    }
+
+    /*
+     * Looks up all ids with one query and answers them in the order of the request
+     * 
+     * Each id gets the status and body GET /tasks/{id} would have answered: 200 with the Task,
+     * including a completion toggle which isn't written yet, or 404 with the error message
+     * 
+     * @param ids           The ids to look up, may repeat
+     * @return a ResponseEntity with one TaskBatchResult per id, 200 if all were found and 207 otherwise
+     */
+    private ResponseEntity<?> findTasks(List<Long> ids){
+        if(ids.isEmpty() || ids.size() > MAX_LOOKUP_SIZE){
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("ids", "Between 1 and " + MAX_LOOKUP_SIZE + " ids can be looked up at once"));
+        }
+
+        Map<Long, Task> tasksById = new HashMap<>();
+        for(Task task : taskRepository.findAllByIds(new HashSet<>(ids).toArray(Long[]::new))){
+            tasksById.put(task.getId(), task);
+        }
+
+        List<TaskBatchResult> results = new ArrayList<>(ids.size());
+        boolean allFound = true;
+        for(int i = 0; i < ids.size(); i++){
+            Long id = ids.get(i);
+            Task task = tasksById.get(id);
+            if(task == null){
+                results.add(TaskBatchResult.notFound(i, Map.of("error", taskNotFoundMessage(id))));
+                allFound = false;
+                continue;
+            }
+            Optional<Boolean> pendingCompleted = writeBehindBuffer.pending(id);
+            if(pendingCompleted.isPresent()){
+                task = task.copy();
+                task.setCompleted(pendingCompleted.get());
+            }
+            results.add(TaskBatchResult.found(i, task));
+        }
+        return ResponseEntity.status(allFound ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(results);
+    }
+
+    /*
+     * Retrieves the number of Tasks, completed and pending, for dashboards which used to count the full list
+     * 
+     * Read from counters the database keeps up to date with every write, it costs the same for any number of Tasks
+     * Completion toggles still waiting in the write-behind buffer are not counted yet
+     * 
+     * @return a ResponseEntity with the TaskStats
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<TaskStats> getTaskStats(){
+        return ResponseEntity.ok(taskRepository.findStats());
+    }
+
+    /*
+     * Pushes every change of the Tasks as Server-Sent Events, instead of clients polling GET /tasks
+     * 
+     * Each event holds the type (created, updated, deleted), the id and, if known, the new version
+     * of a Task. A reconnecting client sends the id of the last event it received and gets the events
+     * it missed, or a "reset" event when they are no longer kept and it has to read the Tasks again
+     * 
+     * @param lastEventId   The Last-Event-ID header sent by a reconnecting EventSource
+     * @return a ResponseEntity with the event stream, or 503 when too many clients are connected
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTasks(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId){
+        Optional<SseEmitter> emitter = eventBroadcaster.subscribe(lastEventId);
+        if(emitter.isEmpty()){
+            return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .build();
+        }
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noStore())
+            .body(emitter.get());
+    }
+
+    /*
+     * Exports all Tasks ordered by id, streamed from PostgreSQL COPY without loading them
+     * 
+     * @param accept        The Accept header, text/csv (the default) or application/x-ndjson
+     * @return a ResponseEntity which writes the file while it is read from the database
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTasks(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept){
+        TaskCopyFormat format = TaskCopyFormat.negotiate(accept);
+        StreamingResponseBody body = out -> taskCopyService.exportTasks(out, format);
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noStore())
+            .varyBy(HttpHeaders.ACCEPT)
+            .contentType(format.getMediaType())
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("tasks." + format.getFileExtension())
+                .build()
+                .toString())
+            .body(body);
+    }
+
+    /*
+     * Imports the Tasks of a CSV or NDJSON file, streamed into PostgreSQL COPY
+     * 
+     * A CSV file starts with a header naming its columns: title and description, optionally
+     * completed and updated_at. id and version are accepted, so an export can be imported, and ignored.
+     * NDJSON has one object per line with the properties of a Task
+     * Rows with a taken title or without title or description don't stop the import, they are
+     * counted as rejected and can be downloaded from GET /tasks/import/{id}/rejects
+     * 
+     * @param request       The request, its body is the file
+     * @return a ResponseEntity with the finished TaskImport, or a 400 if the file is malformed,
+     *         nothing is imported then
+     */
+    @PostMapping(path = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> importTasks(HttpServletRequest request) throws IOException {
+        TaskCopyFormat format = TaskCopyFormat.of(request.getContentType());
+        long contentLength = request.getContentLengthLong();
+        try {
+            TaskImport taskImport = taskCopyService.importTasks(request.getInputStream(), format,
+                contentLength < 0 ? null : contentLength);
+            return ResponseEntity.ok(taskImport);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", ex.getMessage()));
+        }
+    }
+
+    /*
+     * Lists the running imports with their progress, and the finished ones which are still kept
+     * 
+     * @return a ResponseEntity with the imports, newest first
+     */
+    @GetMapping("/import")
+    public ResponseEntity<List<TaskImport>> getImports(){
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noStore())
+            .body(taskCopyService.findImports());
+    }
+
+    /*
+     * Retrieves the progress or the outcome of one import
+     * 
+     * @param id            The id of the import
+     * @return a ResponseEntity with the TaskImport or an error message if it isn't known
+     */
+    @GetMapping("/import/{id}")
+    public ResponseEntity<?> getImport(@PathVariable String id){
+        Optional<TaskImport> taskImport = taskCopyService.findImport(id);
+        if(taskImport.isPresent()){
+            return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(taskImport.get());
+        }
+        return notFoundError("Import with ID: " + id + " couldn't be found.");
+    }
+
+    /*
+     * Downloads the rows an import rejected, in the format of the imported file, each with its row
+     * number and the reason
+     * 
+     * @param id            The id of the import
+     * @return a ResponseEntity with the reject file, or an error message if the import isn't known or
+     *         didn't reject any row
+     */
+    @GetMapping("/import/{id}/rejects")
+    public ResponseEntity<?> getImportRejects(@PathVariable String id){
+        Optional<TaskImport> taskImport = taskCopyService.findImport(id);
+        Optional<Path> rejects = taskImport.flatMap(taskCopyService::findRejects);
+        if(rejects.isPresent()){
+            return ResponseEntity.ok()
+                .contentType(taskImport.get().getFormat().getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(rejects.get().getFileName().toString())
+                    .build()
+                    .toString())
+                .body(new FileSystemResource(rejects.get()));
+        }
+        return notFoundError("Import with ID: " + id + " has no rejected rows.");
+    }
+
     /*
      * Updates an existing Task
      * 
+     * A body with only "completed" is acknowledged with 202 Accepted and written later
+     * when the write-behind buffer is enabled and has room
+     * 
      * @param id            The id of the Task to updated
      * @param updates       A Map containing the fields to update and their new values 
      * @return a ResponseEntity with the updated Task if the update is successful or an error message if not 
      */
     @PutMapping("/{id}")
     public ResponseEntity<?> updateTask(@PathVariable Long id, @RequestBody Map<String, Object> updates){
+        boolean toggle = updates.size() == 1 && updates.get("completed") instanceof Boolean;
+        if(!toggle){
+            // Apply a pending toggle first, otherwise it would overwrite this update when flushed
+            writeBehindBuffer.flush(id);
+        }
+
         Optional<Task> task = findTask(id);
         Map<String, String> errors = new HashMap<>();
 
         if(task.isPresent()){
-            Task updateTask = task.get();
+            if(toggle){
+                boolean completed = (Boolean) updates.get("completed");
+                if(writeBehindBuffer.offer(id, completed)){
+                    Task acceptedTask = task.get().copy();
+                    acceptedTask.setCompleted(completed);
+                    return ResponseEntity.accepted().body(acceptedTask);
+                }
+            }
+
+            // Work on a copy, the found Task is shared with other requests through the cache
+            Task updateTask = task.get().copy();
 
             if(updates.containsKey("title")){
                 String title = updates.get("title").toString().trim();
                 if(title.isEmpty()){
                     errors.put("title", "Title cannot be empty");
-                } else if(!title.equals(updateTask.getTitle()) && taskRepository.existsByTitle(title)){
-                    errors.put("title", "Title with name: " + title + " already exists.");
                 } else {
                     updateTask.setTitle(title);
                 }
@@ -185,8 +820,99 @@ public class TaskController {
                     .body(errors);
             }
 
-            Task updatedTask = taskRepository.save(updateTask);
-            return ResponseEntity.ok(updatedTask);
+            try {
+                Task updatedTask = taskRepository.saveAndFlush(updateTask);
+                titleIndex.add(updatedTask.getTitle());
+                eventPublisher.publish(TaskEvent.updated(updatedTask));
+                return ResponseEntity.ok(updatedTask);
+            } catch (DataIntegrityViolationException ex) {
+                if(!isDuplicateTitle(ex)){
+                    throw ex;
+                }
+                errors.put("title", "Title with name: " + updateTask.getTitle() + " already exists.");
+                return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(errors);
+            } catch (ObjectOptimisticLockingFailureException ex) {
+                return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Task with ID: " + id + " was changed by another request. Please retry."));
+            }
+        }
+        return notFoundError("Task with ID: " + id + " couldn't be updated. Task doesn't exist.");
+    }
+
+    /*
+     * Partially updates an existing Task with a single UPDATE statement, without reading it first
+     * 
+     * With an If-Match header holding the ETag (version) of the Task, the update only succeeds
+     * if nobody changed the Task in the meantime
+     * 
+     * @param id            The id of the Task to update
+     * @param patch         The fields to change, null fields are left unchanged
+     * @param ifMatch       The optional If-Match header
+     * @return a ResponseEntity with the updated Task and its new ETag, or an error message if not
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patchTask(
+            @PathVariable Long id,
+            @RequestBody TaskPatch patch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        Map<String, String> errors = new HashMap<>();
+
+        if(patch.isEmpty()){
+            errors.put("error", "At least one of title, description or completed is required.");
+        }
+        if(patch.getTitle() != null){
+            validateFields(patch.getTitle(), "title", "Title cannot be empty", errors);
+            patch.setTitle(patch.getTitle().trim());
+        }
+        if(patch.getDescription() != null){
+            validateFields(patch.getDescription(), "description", "Description cannot be empty", errors);
+            patch.setDescription(patch.getDescription().trim());
+        }
+
+        if(!errors.isEmpty()){
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(errors);
+        }
+
+        Long expectedVersion = parseIfMatch(ifMatch);
+        if(expectedVersion != null && expectedVersion < 0){
+            return ResponseEntity
+                .status(HttpStatus.PRECONDITION_FAILED)
+                .body(Map.of("error", "If-Match: " + ifMatch + " can't match the version of a Task."));
+        }
+        // Apply a pending toggle first, otherwise it would overwrite this update when flushed
+        writeBehindBuffer.flush(id);
+        Optional<Task> task;
+        try {
+            task = taskRepository.patch(id, patch, expectedVersion);
+        } catch (DataIntegrityViolationException ex) {
+            if(!isDuplicateTitle(ex)){
+                throw ex;
+            }
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("title", "Title with name: " + patch.getTitle() + " already exists."));
+        }
+
+        if(task.isPresent()){
+            if(patch.getTitle() != null){
+                titleIndex.add(patch.getTitle());
+            }
+            eventPublisher.publish(TaskEvent.updated(task.get()));
+            return ResponseEntity.ok()
+                .eTag(Long.toString(task.get().getVersion()))
+                .body(task.get());
+        }
+
+        // Nothing was updated: only look the Task up to tell a version mismatch from a missing Task
+        if(expectedVersion != null && taskRepository.existsById(id)){
+            return ResponseEntity
+                .status(HttpStatus.PRECONDITION_FAILED)
+                .body(Map.of("error", "Task with ID: " + id + " doesn't match the If-Match version."));
         }
         return notFoundError("Task with ID: " + id + " couldn't be updated. Task doesn't exist.");
     }
@@ -199,13 +925,55 @@ public class TaskController {
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteTask(@PathVariable Long id) {
-        Optional<Task> task = findTask(id);
-    
-        if (task.isPresent()) {
-            taskRepository.deleteById(id);
+        // One DELETE statement, the affected row count tells whether the Task existed
+        if (taskRepository.deleteTaskById(id) > 0) {
+            eventPublisher.publish(TaskEvent.deleted(id));
             return ResponseEntity.ok(Map.of("success", "Deleted Task with ID: " + id));
         } 
         
         return notFoundError("Task with ID: " + id + " couldn't be deleted. Task doesn't exist.");
     }
+
+    /*
+     * Deletes several tasks with a single statement, either by id or by their completed flag
+     * 
+     * @param ids           The ids of the tasks to delete, at most MAX_BATCH_SIZE
+     * @param completed     Deletes all tasks with this completed flag
+     * @return a ResponseEntity with the number of deleted tasks, or an error message if no valid filter was given
+     */
+    @DeleteMapping
+    public ResponseEntity<?> deleteTasks(
+            @RequestParam(required = false) List<Long> ids,
+            @RequestParam(required = false) Boolean completed) {
+        // Never fall back to deleting every task
+        if ((ids == null) == (completed == null)) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", "Exactly one of the parameters 'ids' or 'completed' is required."));
+        }
+
+        int deleted;
+        if (ids != null) {
+            Set<Long> uniqueIds = new HashSet<>(ids);
+            uniqueIds.remove(null);
+            if (uniqueIds.isEmpty() || uniqueIds.size() > MAX_BATCH_SIZE) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("ids", "Between 1 and " + MAX_BATCH_SIZE + " ids are allowed per request."));
+            }
+            // Subscribers only hear about the ids which existed
+            List<Long> deletedIds = taskRepository.deleteAllByIds(uniqueIds.toArray(Long[]::new));
+            deleted = deletedIds.size();
+            if (deleted > 0) {
+                eventPublisher.publish(deletedIds.stream().map(TaskEvent::deleted).toList());
+            }
+        } else {
+            deleted = taskRepository.deleteAllByCompleted(completed);
+            if (deleted > 0) {
+                eventPublisher.publish(TaskEvent.deletedByCompleted(completed));
+            }
+        }
+
+        return ResponseEntity.ok(Map.of(
+            "success", "Deleted " + deleted + " Task(s).",
+            "deleted", deleted));
+    }
 }
@@ -0,0 +1,41 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.Task;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/*
+ * The outcome for a single item of a batch create or multi-get request
+ *
+ * index is the position of the item in the request, status is the HTTP status the item
+ * would have received from POST /tasks or GET /tasks/{id} and either task or errors is set
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TaskBatchResult {
+  private int index;
+  private int status;
+  private Task task;
+  private Map<String, String> errors;
+
+  public static TaskBatchResult created(int index, Task task) {
+    return new TaskBatchResult(index, 201, task, null);
+  }
+
+  public static TaskBatchResult rejected(int index, Map<String, String> errors) {
+    return new TaskBatchResult(index, 400, null, errors);
+  }
+
+  public static TaskBatchResult found(int index, Task task) {
+    return new TaskBatchResult(index, 200, task, null);
+  }
+
+  public static TaskBatchResult notFound(int index, Map<String, String> errors) {
+    return new TaskBatchResult(index, 404, null, errors);
+  }
+}
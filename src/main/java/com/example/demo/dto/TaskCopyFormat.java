@@ -0,0 +1,84 @@
+package com.example.demo.dto;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * The file formats of GET /tasks/export and POST /tasks/import
+ *
+ * CSV has a header row naming the columns, NDJSON one Task object per line
+ */
+public enum TaskCopyFormat {
+  CSV(new MediaType("text", "csv")),
+  NDJSON(MediaType.APPLICATION_NDJSON);
+
+  private final MediaType mediaType;
+
+  TaskCopyFormat(MediaType mediaType) {
+    this.mediaType = mediaType;
+  }
+
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  public String getFileExtension() {
+    return name().toLowerCase();
+  }
+
+  /*
+   * Picks the export format the client prefers, like TaskListFormat.negotiate
+   *
+   * @param accept        The Accept header, may be null
+   * @return the first acceptable format, CSV for a missing, invalid or unsupported Accept header
+   */
+  public static TaskCopyFormat negotiate(String accept) {
+    if (accept == null || accept.isBlank()) {
+      return CSV;
+    }
+    List<MediaType> accepted;
+    try {
+      accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+    } catch (InvalidMediaTypeException ex) {
+      return CSV;
+    }
+    accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+    for (MediaType type : accepted) {
+      if (type.getQualityValue() == 0) {
+        continue;
+      }
+      for (TaskCopyFormat format : values()) {
+        if (type.includes(format.mediaType)) {
+          return format;
+        }
+      }
+    }
+    return CSV;
+  }
+
+  /*
+   * @param contentType   The Content-Type header of an import, may be null
+   * @return the format of the request body, or null if it isn't one of the formats
+   */
+  public static TaskCopyFormat of(String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+    MediaType type;
+    try {
+      type = MediaType.parseMediaType(contentType);
+    } catch (InvalidMediaTypeException ex) {
+      return null;
+    }
+    for (TaskCopyFormat format : values()) {
+      if (format.mediaType.equalsTypeAndSubtype(type)) {
+        return format;
+      }
+    }
+    return null;
+  }
+}
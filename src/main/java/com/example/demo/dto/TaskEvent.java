@@ -0,0 +1,52 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.Task;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * A change of the Task table, pushed to the subscribers of GET /tasks/stream
+ *
+ * Events only name the changed Task, clients which need its fields read it with GET /tasks/{id}
+ * A "deleted" event without an id deletes every Task with the given completed flag
+ * A "reset" event names no Task, Tasks were written in bulk and subscribers read the list again
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TaskEvent {
+  public static final String RESET = "reset";
+
+  private String type;
+  private Long id;
+  private Long version;
+  private Boolean completed;
+
+  public static TaskEvent created(Task task) {
+    return new TaskEvent("created", task.getId(), task.getVersion(), null);
+  }
+
+  public static TaskEvent updated(Task task) {
+    return new TaskEvent("updated", task.getId(), task.getVersion(), null);
+  }
+
+  // A completion toggle written by the write-behind buffer
+  public static TaskEvent completed(Task task) {
+    return new TaskEvent("updated", task.getId(), task.getVersion(), task.isCompleted());
+  }
+
+  public static TaskEvent deleted(long id) {
+    return new TaskEvent("deleted", id, null, null);
+  }
+
+  public static TaskEvent deletedByCompleted(boolean completed) {
+    return new TaskEvent("deleted", null, null, completed);
+  }
+
+  // Tasks were imported, see TaskCopyService
+  public static TaskEvent reset() {
+    return new TaskEvent(RESET, null, null, null);
+  }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.Task;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/*
+ * The Task properties a client can select with GET /tasks?fields=id,title
+ *
+ * The property is both the JSON name and the entity attribute, so a selection is read from the
+ * database as a projection and the skipped columns are never fetched
+ * The column is the name in the tasks table, for the SQL of ReactiveTaskRepository
+ */
+public enum TaskField {
+  ID("id", "id", Task::getId),
+  TITLE("title", "title", Task::getTitle),
+  DESCRIPTION("description", "description", Task::getDescription),
+  COMPLETED("completed", "completed", Task::isCompleted),
+  VERSION("version", "version", Task::getVersion),
+  UPDATED_AT("updatedAt", "updated_at", Task::getUpdatedAt);
+
+  private final String property;
+  private final String column;
+  private final Function<Task, Object> getter;
+
+  TaskField(String property, String column, Function<Task, Object> getter) {
+    this.property = property;
+    this.column = column;
+    this.getter = getter;
+  }
+
+  public String getProperty() {
+    return property;
+  }
+
+  public String getColumn() {
+    return column;
+  }
+
+  public Object valueOf(Task task) {
+    return getter.apply(task);
+  }
+
+  public static Optional<TaskField> fromProperty(String property) {
+    for (TaskField field : values()) {
+      if (field.property.equals(property)) {
+        return Optional.of(field);
+      }
+    }
+    return Optional.empty();
+  }
+}
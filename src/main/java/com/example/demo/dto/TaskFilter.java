@@ -0,0 +1,23 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * The filters of GET /tasks
+ *
+ * Null fields are not filtered on
+ */
+@Getter
+@AllArgsConstructor
+public class TaskFilter {
+  private Boolean completed;
+  // Tasks whose title starts with this text (case-sensitive)
+  private String titlePrefix;
+  // Full-text search on the description, all words must match
+  private String query;
+
+  public boolean isEmpty() {
+    return completed == null && titlePrefix == null && query == null;
+  }
+}
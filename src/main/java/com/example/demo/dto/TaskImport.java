@@ -0,0 +1,51 @@
+package com.example.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/*
+ * Progress and outcome of one POST /tasks/import
+ *
+ * The counters are written by the importing request and read by GET /tasks/import while it runs
+ * totalBytes is the Content-Length of the upload, null if the client didn't send one
+ * rejected rows are listed in the reject file GET /tasks/import/{id}/rejects
+ */
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TaskImport {
+
+  public enum State {
+    // Spooling the upload to a temporary file, no database connection is held yet
+    RECEIVING,
+    // Reading the spooled upload into the staging table
+    COPYING,
+    // Checking the rows and inserting the valid ones
+    INSERTING,
+    WRITING_REJECTS,
+    COMPLETED,
+    FAILED
+  }
+
+  private final String id;
+  private final TaskCopyFormat format;
+  private final Instant startedAt;
+  private final Long totalBytes;
+  private volatile State state = State.RECEIVING;
+  private volatile long bytesRead;
+  private volatile long imported;
+  private volatile long rejected;
+  private volatile Instant finishedAt;
+  private volatile String error;
+
+  public TaskImport(String id, TaskCopyFormat format, Instant startedAt, Long totalBytes) {
+    this.id = id;
+    this.format = format;
+    this.startedAt = startedAt;
+    this.totalBytes = totalBytes;
+  }
+}
@@ -0,0 +1,67 @@
+package com.example.demo.dto;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * The representations of the full Task list, chosen from the Accept header
+ *
+ * JSON is the default, NDJSON writes one Task per line, Smile and CBOR are the compact
+ * binary encodings of the same objects for service-to-service callers
+ */
+public enum TaskListFormat {
+  JSON(MediaType.APPLICATION_JSON),
+  NDJSON(MediaType.APPLICATION_NDJSON),
+  SMILE(new MediaType("application", "x-jackson-smile")),
+  CBOR(MediaType.APPLICATION_CBOR);
+
+  private final MediaType mediaType;
+
+  TaskListFormat(MediaType mediaType) {
+    this.mediaType = mediaType;
+  }
+
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  // Each representation needs its own ETag
+  public String getETagSuffix() {
+    return this == JSON ? "" : "-" + name().toLowerCase();
+  }
+
+  /*
+   * Picks the format the client prefers, by quality and then by the order of the Accept header
+   *
+   * @param accept        The Accept header, may be null
+   * @return the first acceptable format, JSON for a missing, invalid or unsupported Accept header
+   */
+  public static TaskListFormat negotiate(String accept) {
+    if (accept == null || accept.isBlank()) {
+      return JSON;
+    }
+    List<MediaType> accepted;
+    try {
+      accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+    } catch (InvalidMediaTypeException ex) {
+      return JSON;
+    }
+    accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+    for (MediaType type : accepted) {
+      if (type.getQualityValue() == 0) {
+        continue;
+      }
+      // */* and application/* include JSON first
+      for (TaskListFormat format : values()) {
+        if (type.includes(format.mediaType)) {
+          return format;
+        }
+      }
+    }
+    return JSON;
+  }
+}
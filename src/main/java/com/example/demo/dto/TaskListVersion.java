@@ -0,0 +1,27 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/*
+ * Validators of the whole Task list, read from the task_stats counters without reading the Tasks
+ * See V7__add_task_stats_list_version.sql
+ *
+ * The count changes with inserts and deletes, the version sum with every update and lastModified
+ * with every write, so every write changes the ETag
+ * lastModified is null until the first Task is written
+ */
+@Getter
+@AllArgsConstructor
+public class TaskListVersion {
+  private long count;
+  private long versionSum;
+  private Instant lastModified;
+
+  public String getETag() {
+    long micros = lastModified == null ? 0 : lastModified.getEpochSecond() * 1_000_000 + lastModified.getNano() / 1_000;
+    return count + "-" + versionSum + "-" + micros;
+  }
+}
@@ -0,0 +1,21 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.Task;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/*
+ * One keyset page of Tasks ordered by id
+ *
+ * nextCursor is the id to pass as "after" to fetch the following page,
+ * or null when this is the last page
+ */
+@Getter
+@AllArgsConstructor
+public class TaskPage {
+  private List<Task> tasks;
+  private Long nextCursor;
+}
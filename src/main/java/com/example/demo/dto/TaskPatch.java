@@ -0,0 +1,25 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/*
+ * The body of PATCH /tasks/{id}
+ *
+ * Only the non-null fields are changed
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskPatch {
+  private String title;
+  private String description;
+  private Boolean completed;
+
+  public boolean isEmpty() {
+    return title == null && description == null && completed == null;
+  }
+}
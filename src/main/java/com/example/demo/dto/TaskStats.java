@@ -0,0 +1,19 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * Number of Tasks, completed and not, read from the task_stats counters without counting the Tasks
+ * See V6__create_task_stats.sql
+ */
+@Getter
+@AllArgsConstructor
+public class TaskStats {
+  private long total;
+  private long completed;
+
+  public long getPending() {
+    return total - completed;
+  }
+}
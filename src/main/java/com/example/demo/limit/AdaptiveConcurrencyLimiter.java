@@ -0,0 +1,114 @@
+package com.example.demo.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Concurrency limit which follows the latency of the requests (gradient algorithm, like Netflix's Gradient2)
+ *
+ * The average latency of each window of samples (shortRtt) is compared with its long-term average (longRtt).
+ * While the latency stays within TOLERANCE of the long-term average the limit grows by about sqrt(limit)
+ * per window; when requests start to queue, e.g. for pooled connections, the latency rises and the limit
+ * shrinks proportionally, so requests are rejected before the connection pool is exhausted
+ */
+class AdaptiveConcurrencyLimiter {
+
+    // Latency may rise this much over the long-term average before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    // The long-term average follows about the last 100 windows, so it lags behind a rising latency
+    private static final double LONG_RTT_FACTOR = 1 / 100d;
+    // Each window moves the limit only a fifth of the way to the computed one
+    private static final double SMOOTHING = 0.2;
+    private static final int WINDOW_MIN_SAMPLES = 10;
+    private static final long WINDOW_MIN_NANOS = 100_000_000L;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // The current window, guarded by this
+    private long windowStart;
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private double longRtt;
+    private double estimatedLimit;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long nowNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.windowStart = nowNanos;
+    }
+
+    /*
+     * @return true if the request may run, it must call release afterwards
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Ends a request without a latency sample, e.g. one whose duration depends on the client
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /*
+     * Ends a request and adds its latency to the current window
+     *
+     * @param rttNanos      How long the request took
+     * @param nowNanos      The current System.nanoTime()
+     */
+    void release(long rttNanos, long nowNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        synchronized (this) {
+            windowRttSum += rttNanos;
+            windowSamples++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlightBefore);
+            if (windowSamples < WINDOW_MIN_SAMPLES || nowNanos - windowStart < WINDOW_MIN_NANOS) {
+                return;
+            }
+            updateLimit((double) windowRttSum / windowSamples);
+            windowStart = nowNanos;
+            windowRttSum = 0;
+            windowSamples = 0;
+            windowMaxInFlight = 0;
+        }
+    }
+
+    private void updateLimit(double shortRtt) {
+        longRtt = longRtt == 0 ? shortRtt : longRtt + (shortRtt - longRtt) * LONG_RTT_FACTOR;
+        // After a slow phase the long-term average would take long to come down again
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        // Too few requests to tell whether a higher limit would be served as fast
+        if (windowMaxInFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.demo.limit;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * The rate limit budgets of the /tasks requests
+ */
+enum RequestCost {
+    // Single Tasks, pages, multi-gets by id and the change feed
+    READ,
+    // The full list or the export, every row of the table
+    SCAN,
+    WRITE;
+
+    // The parameters of TaskController.getTaskPage and getTasksByIds, without them GET /tasks is the full list
+    private static final String[] PAGE_PARAMETERS = {"after", "limit", "completed", "titlePrefix", "q", "ids"};
+
+    static RequestCost of(HttpServletRequest request, String path) {
+        String method = request.getMethod();
+        // A multi-get with the ids in the body
+        if (method.equals("POST") && path.equals("/tasks/lookup")) {
+            return READ;
+        }
+        if (!method.equals("GET") && !method.equals("HEAD") && !method.equals("OPTIONS")) {
+            return WRITE;
+        }
+        if (method.equals("GET") && path.equals("/tasks/export")) {
+            return SCAN;
+        }
+        if (!method.equals("GET") || !path.equals("/tasks")) {
+            return READ;
+        }
+        for (String parameter : PAGE_PARAMETERS) {
+            if (request.getParameter(parameter) != null) {
+                return READ;
+            }
+        }
+        return SCAN;
+    }
+
+    String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.demo.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Protects the database from bursts on /tasks
+ *
+ * Rate limit: every client (X-API-Key header, else the remote address) has a token bucket per RequestCost,
+ * so a client scanning the full list doesn't use up its budget for single reads or writes. Over budget
+ * the request is answered 429 with Retry-After. Only the keys of tasks.rate-limit.api-keys identify a
+ * client, any other key is ignored, else a client could get a fresh budget with every made-up key
+ *
+ * Concurrency limit: at most AdaptiveConcurrencyLimiter.getLimit() requests run at once, further ones are
+ * answered 503 with Retry-After right away instead of queueing for a pooled connection. The change feed
+ * GET /tasks/stream, the export and the import hold their request open and are not counted
+ *
+ * Rejections are counted as tasks.requests.rejected, tagged with the reason and the request cost
+ *
+ * Both limits are off by default. This is a servlet filter: the reactive stack (ReactiveTaskController)
+ * has neither limit, there only the R2DBC pool bounds the database work
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestLimitFilter extends OncePerRequestFilter {
+
+    static final String API_KEY_HEADER = "X-API-Key";
+
+    // Long-running requests, their duration depends on the client and the amount of data rather than
+    // on the load of the database
+    private static final Set<String> UNLIMITED_PATHS = Set.of("/tasks/stream", "/tasks/export", "/tasks/import");
+
+    /*
+     * Burst size and sustained requests per second of one client
+     */
+    record Budget(double capacity, double perSecond) {
+    }
+
+    private final boolean rateLimitEnabled;
+    private final Set<String> apiKeys;
+    private final Map<RequestCost, Budget> budgets = new EnumMap<>(RequestCost.class);
+    private final Cache<String, Map<RequestCost, TokenBucket>> buckets;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final MeterRegistry meterRegistry;
+
+    public RequestLimitFilter(
+            MeterRegistry meterRegistry,
+            @Value("${tasks.rate-limit.enabled:false}") boolean rateLimitEnabled,
+            @Value("${tasks.rate-limit.read.capacity:200}") double readCapacity,
+            @Value("${tasks.rate-limit.read.per-second:100}") double readPerSecond,
+            @Value("${tasks.rate-limit.scan.capacity:5}") double scanCapacity,
+            @Value("${tasks.rate-limit.scan.per-second:1}") double scanPerSecond,
+            @Value("${tasks.rate-limit.write.capacity:50}") double writeCapacity,
+            @Value("${tasks.rate-limit.write.per-second:20}") double writePerSecond,
+            @Value("${tasks.rate-limit.max-clients:100000}") long maxClients,
+            @Value("${tasks.rate-limit.api-keys:}") List<String> apiKeys,
+            @Value("${tasks.concurrency-limit.enabled:false}") boolean concurrencyLimitEnabled,
+            @Value("${tasks.concurrency-limit.initial:40}") int initialLimit,
+            @Value("${tasks.concurrency-limit.min:8}") int minLimit,
+            @Value("${tasks.concurrency-limit.max:400}") int maxLimit) {
+        this.meterRegistry = meterRegistry;
+        this.rateLimitEnabled = rateLimitEnabled;
+        this.apiKeys = apiKeys.stream()
+            .map(String::trim)
+            .filter(apiKey -> !apiKey.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+        budgets.put(RequestCost.READ, new Budget(readCapacity, readPerSecond));
+        budgets.put(RequestCost.SCAN, new Budget(scanCapacity, scanPerSecond));
+        budgets.put(RequestCost.WRITE, new Budget(writeCapacity, writePerSecond));
+        // A client idle for a minute has a full bucket again anyway
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(maxClients)
+            .expireAfterAccess(Duration.ofMinutes(1))
+            .build();
+        this.concurrencyLimiter = concurrencyLimitEnabled
+            ? new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, System.nanoTime())
+            : null;
+        if (concurrencyLimiter != null) {
+            Gauge.builder("tasks.concurrency.limit", concurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit of /tasks")
+                .register(meterRegistry);
+            Gauge.builder("tasks.concurrency.in_flight", concurrencyLimiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("/tasks requests running under the concurrency limit")
+                .register(meterRegistry);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = path(request);
+        return !path.equals("/tasks") && !path.startsWith("/tasks/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = path(request);
+        RequestCost cost = RequestCost.of(request, path);
+
+        if (rateLimitEnabled) {
+            long waitNanos = bucket(request, cost).tryTake(System.nanoTime());
+            if (waitNanos > 0) {
+                long retryAfter = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, "rate-limit", cost, retryAfter,
+                    "Too many requests, retry in " + retryAfter + (retryAfter == 1 ? " second." : " seconds."));
+                return;
+            }
+        }
+
+        if (concurrencyLimiter == null || UNLIMITED_PATHS.contains(path)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "concurrency-limit", cost, 1,
+                "The server is busy, retry in 1 second.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                async = true;
+                // Streamed bodies keep their permit until they are written, how long that takes depends
+                // on the client, so they give no latency sample
+                request.getAsyncContext().addListener(new ReleasingListener());
+            }
+        } finally {
+            if (!async) {
+                long now = System.nanoTime();
+                concurrencyLimiter.release(now - start, now);
+            }
+        }
+    }
+
+    private Map<RequestCost, TokenBucket> createBuckets(String client) {
+        long now = System.nanoTime();
+        Map<RequestCost, TokenBucket> clientBuckets = new EnumMap<>(RequestCost.class);
+        budgets.forEach((cost, budget) ->
+            clientBuckets.put(cost, new TokenBucket(budget.capacity(), budget.perSecond(), now)));
+        return clientBuckets;
+    }
+
+    private TokenBucket bucket(HttpServletRequest request, RequestCost cost) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        String client = apiKey != null && apiKeys.contains(apiKey)
+            ? "key:" + apiKey
+            : "addr:" + request.getRemoteAddr();
+        return buckets.get(client, this::createBuckets).get(cost);
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String reason, RequestCost cost,
+                        long retryAfterSeconds, String message) throws IOException {
+        Counter.builder("tasks.requests.rejected")
+            .description("/tasks requests rejected by the rate or concurrency limit")
+            .tag("reason", reason)
+            .tag("cost", cost.tag())
+            .register(meterRegistry)
+            .increment();
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        // The messages are fixed text, nothing to escape
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private class ReleasingListener implements AsyncListener {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                concurrencyLimiter.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demo.limit;
+
+/*
+ * Token bucket: holds up to capacity tokens and gains tokensPerSecond, each request takes one
+ * Lets a client burst up to the capacity and then sustain tokensPerSecond
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double capacity, double tokensPerSecond, long nowNanos) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.refilledAt = nowNanos;
+    }
+
+    /*
+     * Takes a token if there is one
+     *
+     * @param nowNanos      The current System.nanoTime()
+     * @return 0 if a token was taken, else the nanoseconds until the next one
+     */
+    synchronized long tryTake(long nowNanos) {
+        tokens = Math.min(capacity, tokens + (nowNanos - refilledAt) * tokensPerNano);
+        refilledAt = nowNanos;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+}
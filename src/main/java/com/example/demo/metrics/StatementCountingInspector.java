@@ -0,0 +1,51 @@
+package com.example.demo.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Sees every SQL statement Hibernate prepares
+ *
+ * Counts the statements of the current thread for StatementsPerRequestFilter and logs a
+ * random sample of them, which replaces spring.jpa.show-sql in production
+ */
+@Component
+public class StatementCountingInspector implements StatementInspector {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementCountingInspector.class);
+
+    private final ThreadLocal<int[]> statementCount = ThreadLocal.withInitial(() -> new int[1]);
+    private final double sampleRate;
+
+    public StatementCountingInspector(@Value("${tasks.sql-log.sample-rate:0.0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        statementCount.get()[0]++;
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            log.info("Sampled SQL: {}", sql);
+        }
+        return sql;
+    }
+
+    /*
+     * Starts counting from zero on the current thread
+     */
+    public void reset() {
+        statementCount.get()[0] = 0;
+    }
+
+    /*
+     * @return the number of statements prepared on the current thread since the last reset
+     */
+    public int count() {
+        return statementCount.get()[0];
+    }
+}
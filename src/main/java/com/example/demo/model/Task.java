@@ -2,23 +2,28 @@ package com.example.demo.model;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import lombok.Getter;
 import lombok.Setter;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Entity
-@Table(name = "tasks", uniqueConstraints = {@UniqueConstraint(columnNames = "title")})
+// The schema is owned by the Flyway migrations in db/migration, Hibernate only validates it
+@Table(name = "tasks", uniqueConstraints = {@UniqueConstraint(name = "tasks_title_key", columnNames = "title")})
 @Getter
 @Setter
 @NoArgsConstructor
 public class Task {
+  // Pooled sequence: one nextval per 50 inserts and lets Hibernate batch the INSERTs
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tasks_seq")
+  @SequenceGenerator(name = "tasks_seq", sequenceName = "tasks_seq", allocationSize = 50)
   private Long id;
 
   @NotBlank(message = "Title is required") 
-  @Column(unique = true)
   private String title;
 
   @NotBlank(message = "Description is required")
@@ -26,8 +31,31 @@ public class Task {
 
   private boolean completed = false;
 
+  // Incremented on every update, used for optimistic locking and as the ETag of the Task
+  @Version
+  @Column(nullable = false, columnDefinition = "bigint not null default 0")
+  private long version;
+
+  // Time of the last insert or update, the Last-Modified of the Task
+  // Set by the application on every write path, also the native ones (TaskRepository, TaskWriteBehindBuffer)
+  @UpdateTimestamp
+  @Column(name = "updated_at", nullable = false)
+  private Instant updatedAt;
+
   public Task(String title, String description) {
     this.title = title;
     this.description = description;
   }
+
+  /*
+   * Returns a detached copy, used to change a Task which may be shared through the cache
+   */
+  public Task copy() {
+    Task copy = new Task(title, description);
+    copy.setId(id);
+    copy.setCompleted(completed);
+    copy.setVersion(version);
+    copy.setUpdatedAt(updatedAt);
+    return copy;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,274 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskFilter;
+import com.example.demo.dto.TaskListVersion;
+import com.example.demo.dto.TaskPatch;
+import com.example.demo.dto.TaskStats;
+import com.example.demo.model.Task;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/*
+ * Non-blocking access to the tasks table over R2DBC, for ReactiveTaskController
+ *
+ * Every method is a single statement, so none needs a transaction, and the unique constraint on the
+ * title is checked by the database like with JPA: a duplicate fails with a DataIntegrityViolationException
+ * The "tasks" cache of TaskRepository isn't used, the reactive stack reads every Task from the database
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTaskRepository {
+
+  // Rows read per round trip while streaming the full list, like TaskRepository.streamAllOrderedById
+  static final int FETCH_SIZE = 500;
+
+  // The id comes from the same sequence as the JPA inserts. Hibernate hands out blocks of 50 ids per
+  // nextval, so every value taken here is the end of a block nobody else uses
+  private static final String INSERT_SQL = "INSERT INTO tasks (id, title, description, completed, version, updated_at)"
+      + " VALUES (nextval('tasks_seq'), :title, :description, :completed, 0, :updatedAt)"
+      + " RETURNING *";
+
+  // One statement for the whole batch, all rows are inserted or none
+  private static final String INSERT_ALL_SQL = "INSERT INTO tasks (id, title, description, completed, version, updated_at)"
+      + " SELECT nextval('tasks_seq'), t.title, t.description, t.completed, 0, :updatedAt"
+      + " FROM unnest(CAST(:titles AS text[]), CAST(:descriptions AS text[]), CAST(:completed AS boolean[]))"
+      + " AS t(title, description, completed)"
+      + " RETURNING *";
+
+  // Optimistic locking like @Version: no row is updated when somebody else changed the Task first
+  private static final String UPDATE_SQL = "UPDATE tasks SET title = :title, description = :description,"
+      + " completed = :completed, version = version + 1, updated_at = :updatedAt"
+      + " WHERE id = :id AND version = :version"
+      + " RETURNING *";
+
+  private final DatabaseClient databaseClient;
+
+  public ReactiveTaskRepository(DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  public Mono<Task> findById(long id) {
+    return databaseClient.sql("SELECT * FROM tasks WHERE id = :id")
+        .bind("id", id)
+        .map(ReactiveTaskRepository::toTask)
+        .one();
+  }
+
+  public Mono<Boolean> existsById(long id) {
+    return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM tasks WHERE id = :id)")
+        .bind("id", id)
+        .map(row -> row.get(0, Boolean.class))
+        .one();
+  }
+
+  /*
+   * Returns which of the given titles are already taken, in a single query
+   */
+  public Flux<String> findExistingTitles(Collection<String> titles) {
+    return databaseClient.sql("SELECT title FROM tasks WHERE title = ANY(:titles)")
+        .bind("titles", titles.toArray(String[]::new))
+        .map(row -> row.get("title", String.class))
+        .all();
+  }
+
+  /*
+   * The Tasks with one of the given ids, in no particular order, like TaskRepository.findAllByIds
+   */
+  public Flux<Task> findAllByIds(Collection<Long> ids) {
+    return databaseClient.sql("SELECT * FROM tasks WHERE id = ANY(:ids)")
+        .bind("ids", ids.toArray(Long[]::new))
+        .map(ReactiveTaskRepository::toTask)
+        .all();
+  }
+
+  /*
+   * The number of all and of completed Tasks from the task_stats counters, like TaskRepository.findStats
+   */
+  public Mono<TaskStats> findStats() {
+    return databaseClient.sql("SELECT CAST(coalesce(sum(total), 0) AS bigint),"
+            + " CAST(coalesce(sum(completed), 0) AS bigint) FROM task_stats")
+        .map(row -> new TaskStats(row.get(0, Long.class), row.get(1, Long.class)))
+        .one();
+  }
+
+  /*
+   * Count, version sum and last modification of all Tasks from the task_stats counters, like TaskRepository.findListVersion
+   */
+  public Mono<TaskListVersion> findListVersion() {
+    return databaseClient.sql("SELECT CAST(coalesce(sum(total), 0) AS bigint),"
+            + " CAST(coalesce(sum(version_sum), 0) AS bigint), max(last_modified) FROM task_stats")
+        .map(row -> new TaskListVersion(row.get(0, Long.class), row.get(1, Long.class), row.get(2, Instant.class)))
+        .one();
+  }
+
+  /*
+   * Every Task in id order, read FETCH_SIZE rows at a time while the subscriber requests more
+   */
+  public Flux<Task> findAllOrderedById() {
+    return databaseClient.sql("SELECT * FROM tasks ORDER BY id")
+        .filter(statement -> statement.fetchSize(FETCH_SIZE))
+        .map(ReactiveTaskRepository::toTask)
+        .all();
+  }
+
+  /*
+   * Every Task in id order with only the given fields, the other columns are not read
+   *
+   * @param fields        The fields to read, in the order they are written
+   * @return one map per Task from the property names to their values
+   */
+  public Flux<Map<String, Object>> findAllOrderedById(List<TaskField> fields) {
+    // The columns are fixed enum values, never text from the request
+    String columns = fields.stream().map(TaskField::getColumn).collect(Collectors.joining(", "));
+    return databaseClient.sql("SELECT " + columns + " FROM tasks ORDER BY id")
+        .filter(statement -> statement.fetchSize(FETCH_SIZE))
+        .map(row -> {
+          Map<String, Object> task = new LinkedHashMap<>();
+          for (TaskField field : fields) {
+            Object value = field == TaskField.UPDATED_AT
+                ? row.get(field.getColumn(), Instant.class)
+                : row.get(field.getColumn());
+            task.put(field.getProperty(), value);
+          }
+          return task;
+        })
+        .all();
+  }
+
+  /*
+   * Keyset page with optional filters, the same statements as TaskSearchRepositoryImpl
+   *
+   * @param limit         The number of Tasks to read, one more than the page size to know if there is a next page
+   */
+  public Flux<Task> search(TaskFilter filter, long after, int limit) {
+    TaskSearchRepositoryImpl.SearchQuery searchQuery = TaskSearchRepositoryImpl.buildQuery(filter, after, limit);
+    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(searchQuery.sql());
+    for (Map.Entry<String, Object> parameter : searchQuery.parameters().entrySet()) {
+      spec = spec.bind(parameter.getKey(), parameter.getValue());
+    }
+    return spec.map(ReactiveTaskRepository::toTask).all();
+  }
+
+  public Mono<Task> insert(Task task) {
+    return databaseClient.sql(INSERT_SQL)
+        .bind("title", task.getTitle())
+        .bind("description", task.getDescription())
+        .bind("completed", task.isCompleted())
+        .bind("updatedAt", Instant.now())
+        .map(ReactiveTaskRepository::toTask)
+        .one();
+  }
+
+  /*
+   * Inserts all Tasks with one statement
+   *
+   * @return the inserted Tasks, in the order of the given list
+   */
+  public Flux<Task> insertAll(List<Task> tasks) {
+    String[] titles = new String[tasks.size()];
+    String[] descriptions = new String[tasks.size()];
+    Boolean[] completed = new Boolean[tasks.size()];
+    for (int i = 0; i < tasks.size(); i++) {
+      titles[i] = tasks.get(i).getTitle();
+      descriptions[i] = tasks.get(i).getDescription();
+      completed[i] = tasks.get(i).isCompleted();
+    }
+    // RETURNING doesn't promise the order of the input, the titles are unique and put it back
+    return databaseClient.sql(INSERT_ALL_SQL)
+        .bind("titles", titles)
+        .bind("descriptions", descriptions)
+        .bind("completed", completed)
+        .bind("updatedAt", Instant.now())
+        .map(ReactiveTaskRepository::toTask)
+        .all()
+        .collectMap(Task::getTitle)
+        .flatMapIterable(inserted -> tasks.stream().map(task -> inserted.get(task.getTitle())).toList());
+  }
+
+  /*
+   * Writes all fields of the Task if it still has the given version
+   *
+   * @return the updated Task, or an empty Mono if the Task was changed or deleted in the meantime
+   */
+  public Mono<Task> update(Task task, long expectedVersion) {
+    return databaseClient.sql(UPDATE_SQL)
+        .bind("id", task.getId())
+        .bind("title", task.getTitle())
+        .bind("description", task.getDescription())
+        .bind("completed", task.isCompleted())
+        .bind("version", expectedVersion)
+        .bind("updatedAt", Instant.now())
+        .map(ReactiveTaskRepository::toTask)
+        .one();
+  }
+
+  /*
+   * Applies the non-null fields of the patch with a single UPDATE ... RETURNING, see TaskRepository.patch
+   *
+   * @return the updated Task, or an empty Mono if no Task has this id (and version)
+   */
+  public Mono<Task> patch(long id, TaskPatch patch, Long expectedVersion) {
+    return databaseClient.sql(TaskRepository.PATCH_SQL)
+        .bind("id", id)
+        .bind("setTitle", patch.getTitle() != null)
+        .bind("title", patch.getTitle() == null ? "" : patch.getTitle())
+        .bind("setDescription", patch.getDescription() != null)
+        .bind("description", patch.getDescription() == null ? "" : patch.getDescription())
+        .bind("setCompleted", patch.getCompleted() != null)
+        .bind("completed", Boolean.TRUE.equals(patch.getCompleted()))
+        .bind("checkVersion", expectedVersion != null)
+        .bind("expectedVersion", expectedVersion == null ? 0L : expectedVersion)
+        .bind("updatedAt", Instant.now())
+        .map(ReactiveTaskRepository::toTask)
+        .one();
+  }
+
+  /*
+   * @return the number of deleted rows, 0 if no Task has this id
+   */
+  public Mono<Long> deleteById(long id) {
+    return databaseClient.sql("DELETE FROM tasks WHERE id = :id")
+        .bind("id", id)
+        .fetch()
+        .rowsUpdated();
+  }
+
+  /*
+   * Deletes the Tasks with the given ids and returns the ids which existed, like TaskRepository.deleteAllByIds
+   */
+  public Mono<List<Long>> deleteAllByIds(Collection<Long> ids) {
+    return databaseClient.sql("DELETE FROM tasks WHERE id = ANY(:ids) RETURNING id")
+        .bind("ids", ids.toArray(Long[]::new))
+        .map(row -> row.get(0, Long.class))
+        .all()
+        .collectList();
+  }
+
+  public Mono<Long> deleteAllByCompleted(boolean completed) {
+    return databaseClient.sql("DELETE FROM tasks WHERE completed = :completed")
+        .bind("completed", completed)
+        .fetch()
+        .rowsUpdated();
+  }
+
+  static Task toTask(Readable row) {
+    Task task = new Task(row.get("title", String.class), row.get("description", String.class));
+    task.setId(row.get("id", Long.class));
+    task.setCompleted(Boolean.TRUE.equals(row.get("completed", Boolean.class)));
+    task.setVersion(row.get("version", Long.class));
+    task.setUpdatedAt(row.get("updated_at", Instant.class));
+    return task;
+  }
+}
@@ -1,10 +1,181 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.TaskListVersion;
+import com.example.demo.dto.TaskPatch;
+import com.example.demo.dto.TaskStats;
 import com.example.demo.model.Task;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface TaskRepository extends JpaRepository<Task, Long> {
+public interface TaskRepository extends JpaRepository<Task, Long>, TaskSearchRepository {
+  /*
+   * Single Task lookups are served from the "tasks" cache, missing ids are not cached
+   * Lookups which may have read a replica are only served to requests like theirs for a short time,
+   * see ReplicaReadCacheManager
+   * Lookups which a write of the Task overtook, see TaskLookupCoalescer, are not cached either
+   * The returned Task may be shared with other requests and must not be modified
+   */
+  @Override
+  @Cacheable(cacheNames = "tasks", key = "#p0", unless = "T(com.example.demo.service.TaskLookupCoalescer).isSuperseded() || #result == null")
+  Optional<Task> findById(Long id);
+
+  @Override
+  @CachePut(cacheNames = "tasks", key = "#result.id")
+  <S extends Task> S save(S task);
+
+  @Override
+  @CachePut(cacheNames = "tasks", key = "#result.id")
+  <S extends Task> S saveAndFlush(S task);
+
+  @Override
+  @CacheEvict(cacheNames = "tasks", key = "#p0")
+  void deleteById(Long id);
+
+  /*
+   * Deletes the Task with a single DELETE, without loading it first
+   *
+   * @param id The id of the Task to delete
+   * @return the number of deleted rows, 0 if no Task has this id
+   */
+  @Transactional
+  @Modifying
+  @CacheEvict(cacheNames = "tasks", key = "#p0")
+  @Query("delete from Task t where t.id = :id")
+  int deleteTaskById(@Param("id") Long id);
+
+  /*
+   * Deletes all Tasks with one of the given ids in a single DELETE ... RETURNING statement
+   * Evicts the whole cache, the deleted ids are not known up front
+   *
+   * @param ids The ids of the Tasks to delete, bound as one array parameter like in findAllByIds
+   * @return the ids of the Tasks which were deleted, ids which didn't exist are left out
+   */
+  @Transactional
+  @CacheEvict(cacheNames = "tasks", allEntries = true)
+  @Query(value = "DELETE FROM tasks WHERE id = ANY(:ids) RETURNING id", nativeQuery = true)
+  List<Long> deleteAllByIds(@Param("ids") Long[] ids);
+
+  /*
+   * Deletes all Tasks with the given completed flag in a single statement
+   */
+  @Transactional
+  @Modifying
+  @CacheEvict(cacheNames = "tasks", allEntries = true)
+  @Query("delete from Task t where t.completed = :completed")
+  int deleteAllByCompleted(@Param("completed") boolean completed);
+
+  /*
+   * The read-only query methods below may be answered by a read replica, see ReplicaRoutingDataSource
+   * Declared query methods don't get the read-only transaction of SimpleJpaRepository by default
+   */
+  @Transactional(readOnly = true)
   boolean existsByTitle(String title);
-}
\ No newline at end of file
+
+  /*
+   * Returns which of the given titles are already taken, in a single query
+   */
+  @Transactional(readOnly = true)
+  @Query("select t.title from Task t where t.title in :titles")
+  List<String> findExistingTitles(@Param("titles") Collection<String> titles);
+
+  /*
+   * The Tasks with the given ids in a single query, in no particular order, missing ids are left out
+   * The ids are bound as one array parameter, so every number of ids shares the same statement
+   */
+  @Transactional(readOnly = true)
+  @Query(value = "SELECT * FROM tasks WHERE id = ANY(:ids)", nativeQuery = true)
+  List<Task> findAllByIds(@Param("ids") Long[] ids);
+
+  /*
+   * Keyset page: the Tasks with an id greater than the given cursor, in id order
+   */
+  @Transactional(readOnly = true)
+  Slice<Task> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+  /*
+   * Count, version sum and last modification of all Tasks, the validators of the full list
+   * Summed from the task_stats counter slots like findStats, the Tasks themselves are not read
+   */
+  @Transactional(readOnly = true)
+  @Query(value = "SELECT CAST(coalesce(sum(total), 0) AS bigint) AS count,"
+      + " CAST(coalesce(sum(version_sum), 0) AS bigint) AS versionSum,"
+      + " max(last_modified) AS lastModified FROM task_stats", nativeQuery = true)
+  TaskListVersion findListVersion();
+
+  /*
+   * Number of all and of the completed Tasks, the sums of the task_stats counter slots
+   * The triggers on tasks keep them current, the Tasks themselves are not read
+   */
+  @Transactional(readOnly = true)
+  @Query(value = "SELECT CAST(coalesce(sum(total), 0) AS bigint) AS total,"
+      + " CAST(coalesce(sum(completed), 0) AS bigint) AS completed FROM task_stats", nativeQuery = true)
+  TaskStats findStats();
+
+  /*
+   * Streams every Task in id order through a server-side cursor
+   * Must be consumed inside a transaction and closed afterwards
+   */
+  @Query("select t from Task t order by t.id")
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<Task> streamAllOrderedById();
+
+  /*
+   * Applies the non-null fields of the patch with a single UPDATE ... RETURNING, without reading the row first
+   *
+   * @param id              The id of the Task to change
+   * @param patch           The fields to change
+   * @param expectedVersion The version the Task must have, or null to update any version
+   * @return the updated Task, or an empty Optional if no Task has this id (and version)
+   */
+  @CachePut(cacheNames = "tasks", key = "#p0", unless = "#result == null")
+  default Optional<Task> patch(Long id, TaskPatch patch, Long expectedVersion) {
+    return updateColumns(id,
+        patch.getTitle() != null, patch.getTitle() == null ? "" : patch.getTitle(),
+        patch.getDescription() != null, patch.getDescription() == null ? "" : patch.getDescription(),
+        patch.getCompleted() != null, Boolean.TRUE.equals(patch.getCompleted()),
+        expectedVersion != null, expectedVersion == null ? 0L : expectedVersion, Instant.now());
+  }
+
+  // Every parameter is bound non-null, the set* flags select which columns keep their value
+  // and checkVersion whether expectedVersion applies
+  // Shared with ReactiveTaskRepository, which binds the same named parameters
+  String PATCH_SQL = "UPDATE tasks SET"
+      + " title = CASE WHEN :setTitle THEN :title ELSE title END,"
+      + " description = CASE WHEN :setDescription THEN :description ELSE description END,"
+      + " completed = CASE WHEN :setCompleted THEN :completed ELSE completed END,"
+      + " version = version + 1,"
+      + " updated_at = :updatedAt"
+      + " WHERE id = :id AND (NOT :checkVersion OR version = :expectedVersion)"
+      + " RETURNING *";
+
+  @Transactional
+  @Query(value = PATCH_SQL, nativeQuery = true)
+  Optional<Task> updateColumns(@Param("id") Long id,
+                               @Param("setTitle") boolean setTitle, @Param("title") String title,
+                               @Param("setDescription") boolean setDescription, @Param("description") String description,
+                               @Param("setCompleted") boolean setCompleted, @Param("completed") boolean completed,
+                               @Param("checkVersion") boolean checkVersion, @Param("expectedVersion") long expectedVersion,
+                               @Param("updatedAt") Instant updatedAt);
+}
@@ -0,0 +1,20 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.TaskFilter;
+import com.example.demo.model.Task;
+import org.springframework.data.domain.Slice;
+
+/*
+ * Filtered keyset pages of Tasks, mixed into TaskRepository
+ */
+public interface TaskSearchRepository {
+  /*
+   * Returns one keyset page of the Tasks matching the filter, ordered by id
+   *
+   * @param filter The filters to apply, null fields are ignored
+   * @param after  Only Tasks with an id greater than this cursor are returned
+   * @param limit  The maximum number of Tasks in the page
+   * @return the page, hasNext() tells whether more Tasks match
+   */
+  Slice<Task> search(TaskFilter filter, long after, int limit);
+}
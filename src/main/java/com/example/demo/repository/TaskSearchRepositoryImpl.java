@@ -0,0 +1,76 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.TaskFilter;
+import com.example.demo.model.Task;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Builds the search query from the filters that are actually given, so each combination
+ * gets its own statement and plan and can use the indexes created in V2__create_task_search_indexes.sql
+ */
+class TaskSearchRepositoryImpl implements TaskSearchRepository {
+
+  // Must match the expression of tasks_description_fts_idx
+  static final String DESCRIPTION_TSVECTOR = "to_tsvector('english', coalesce(description, ''))";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  /*
+   * A native search statement and its named parameters
+   */
+  record SearchQuery(String sql, Map<String, Object> parameters) {
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  @SuppressWarnings("unchecked")
+  public Slice<Task> search(TaskFilter filter, long after, int limit) {
+    // One extra row tells whether there is a next page
+    SearchQuery searchQuery = buildQuery(filter, after, limit + 1);
+    Query query = entityManager.createNativeQuery(searchQuery.sql(), Task.class);
+    searchQuery.parameters().forEach(query::setParameter);
+
+    List<Task> tasks = query.getResultList();
+    boolean hasNext = tasks.size() > limit;
+    return new SliceImpl<>(hasNext ? tasks.subList(0, limit) : tasks, PageRequest.ofSize(limit), hasNext);
+  }
+
+  static SearchQuery buildQuery(TaskFilter filter, long after, int limit) {
+    StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE id > :after");
+    Map<String, Object> parameters = new LinkedHashMap<>();
+    parameters.put("after", after);
+
+    // A literal instead of a parameter, otherwise a generic plan can't use the partial index
+    if (filter.getCompleted() != null) {
+      sql.append(filter.getCompleted() ? " AND completed = true" : " AND completed = false");
+    }
+    if (filter.getTitlePrefix() != null) {
+      sql.append(" AND title LIKE :titlePattern ESCAPE '\\'");
+      parameters.put("titlePattern", escapeLike(filter.getTitlePrefix()) + "%");
+    }
+    if (filter.getQuery() != null) {
+      sql.append(" AND ").append(DESCRIPTION_TSVECTOR).append(" @@ plainto_tsquery('english', :query)");
+      parameters.put("query", filter.getQuery());
+    }
+
+    sql.append(" ORDER BY id LIMIT :limit");
+    parameters.put("limit", limit);
+    return new SearchQuery(sql.toString(), parameters);
+  }
+
+  // The prefix is matched literally, % and _ are not wildcards
+  private static String escapeLike(String value) {
+    return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+}
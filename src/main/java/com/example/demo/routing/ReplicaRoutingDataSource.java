@@ -0,0 +1,314 @@
+package com.example.demo.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Sends the read-only transactions of GET requests to a read replica, everything else to the primary
+ *
+ * A replica is only used when ReplicaRoutingFilter allowed it for the current request, the transaction
+ * is @Transactional(readOnly = true) and the replica is at most maxLag behind. A client which wrote
+ * only reads from replicas which already replayed the WAL position of the primary after its write,
+ * or else from the primary. maxLag comes from the lag query and is an estimate, the WAL positions are exact
+ *
+ * The connection is only taken from a pool at the first statement, once the transaction is marked read-only,
+ * so the JPA transaction manager and Hibernate see one DataSource
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        // The replica with the fewest connections in use
+        LEAST_CONNECTIONS
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+
+    // WAL positions as byte offsets, comparable between the primary and its replicas
+    static final String WRITE_POSITION_SQL = "SELECT CAST(pg_current_wal_insert_lsn() - '0/0' AS bigint)";
+    // A database which isn't a standby, e.g. a stand-in replica, has everything its server wrote
+    static final String REPLAY_POSITION_SQL =
+        "SELECT CAST(coalesce(pg_last_wal_replay_lsn(), pg_current_wal_insert_lsn()) - '0/0' AS bigint)";
+
+    // Null outside requests and for writing requests, which only use the primary
+    private static final ThreadLocal<ReadContext> READ_CONTEXT = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Balancing balancing;
+    private final long maxLagMillis;
+    private final String lagQuery;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService lagChecker;
+
+    /*
+     * @param primary       The pool of the primary, used for all writes
+     * @param replicas      The pools of the replicas, named after their pool
+     * @param balancing     How one of the eligible replicas is chosen
+     * @param maxLag        Replicas further behind are left out until they caught up
+     * @param lagCheckInterval How often the lag of every replica is queried
+     * @param lagQuery      Returns the lag of a replica in milliseconds, see database.replicas.lag-query
+     */
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Balancing balancing,
+                                    Duration maxLag, Duration lagCheckInterval, String lagQuery,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.balancing = balancing;
+        this.maxLagMillis = maxLag.toMillis();
+        this.lagQuery = lagQuery;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        Counter primaryConnections = connectionCounter(meterRegistry, PRIMARY);
+        for (HikariDataSource dataSource : replicas) {
+            Replica replica = new Replica(dataSource, connectionCounter(meterRegistry, dataSource.getPoolName()));
+            this.replicas.add(replica);
+            targets.put(replica.name, dataSource);
+            Gauge.builder("tasks.db.replica.lag", replica, r -> r.lagMillis)
+                .description("Replication lag of the replica at the last check in milliseconds, -1 when unreachable")
+                .baseUnit("milliseconds")
+                .tag("pool", replica.name)
+                .register(meterRegistry);
+        }
+
+        AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                Replica replica = chooseReplica();
+                if (replica == null) {
+                    primaryConnections.increment();
+                    return PRIMARY;
+                }
+                replica.connections.increment();
+                return replica.name;
+            }
+        };
+        router.setTargetDataSources(targets);
+        router.setDefaultTargetDataSource(primary);
+        router.setLenientFallback(false);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+        afterPropertiesSet();
+
+        lagChecker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static Counter connectionCounter(MeterRegistry meterRegistry, String pool) {
+        return Counter.builder("tasks.db.routed.connections")
+            .description("Connections taken by ReplicaRoutingDataSource per pool")
+            .tag("pool", pool)
+            .register(meterRegistry);
+    }
+
+    /*
+     * Lets the read-only transactions of the current thread use replicas, until clearReads
+     *
+     * @param lastWritePosition The WAL position of the primary after the client's last write, see
+     *                          getWritePosition, or 0 if it didn't write
+     */
+    public static void allowReplicaReads(long lastWritePosition) {
+        READ_CONTEXT.set(new ReadContext(lastWritePosition));
+    }
+
+    public static void clearReads() {
+        READ_CONTEXT.remove();
+    }
+
+    /*
+     * How up to date the reads of the current thread have to be, e.g. for sharing their results
+     * A read by a thread with at least the same value is up to date enough for this thread
+     *
+     * @return the position of the client's last write for replica reads, Long.MAX_VALUE when only the primary is read
+     */
+    public static long getReadFreshness() {
+        ReadContext context = READ_CONTEXT.get();
+        return context == null ? Long.MAX_VALUE : context.lastWritePosition;
+    }
+
+    /*
+     * Whether the read-only transactions of the current thread may read a replica, e.g. to keep
+     * their results out of caches which every later request reads
+     * Also true if the read went to the primary in the end, or was shared with one that may have
+     */
+    public static boolean mayReadFromReplica() {
+        return getReadFreshness() != Long.MAX_VALUE;
+    }
+
+    /*
+     * Runs the task with the replica reads of the submitting thread, e.g. a streamed response body
+     * which is written on an async thread after the request thread was released
+     */
+    public static Runnable propagateReads(Runnable task) {
+        ReadContext context = READ_CONTEXT.get();
+        if (context == null) {
+            return task;
+        }
+        return () -> {
+            READ_CONTEXT.set(context);
+            try {
+                task.run();
+            } finally {
+                READ_CONTEXT.remove();
+            }
+        };
+    }
+
+    /*
+     * The WAL position of the primary, which includes every transaction committed so far
+     * A replica which replayed up to it has the writes of a client that committed before the call
+     */
+    public long getWritePosition() throws SQLException {
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(WRITE_POSITION_SQL)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    Replica chooseReplica() {
+        ReadContext context = READ_CONTEXT.get();
+        if (context == null || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        // All reads of a request use the same replica while it stays eligible, e.g. the ETag and the body of GET /tasks
+        if (context.replica != null && isEligible(context.replica, context.lastWritePosition)) {
+            return context.replica;
+        }
+        List<Replica> eligible = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (isEligible(replica, context.lastWritePosition)) {
+                eligible.add(replica);
+            }
+        }
+        if (eligible.isEmpty()) {
+            context.replica = null;
+            return null;
+        }
+        context.replica = balancing == Balancing.LEAST_CONNECTIONS
+            ? leastConnections(eligible)
+            : eligible.get(Math.floorMod(nextReplica.getAndIncrement(), eligible.size()));
+        return context.replica;
+    }
+
+    // Replayed past the client's last write, and not too far behind now
+    private boolean isEligible(Replica replica, long lastWritePosition) {
+        long lag = replica.lagMillis;
+        return lag >= 0 && lag <= maxLagMillis && replica.replayedPosition >= lastWritePosition;
+    }
+
+    private static Replica leastConnections(List<Replica> eligible) {
+        Replica least = null;
+        int leastActive = Integer.MAX_VALUE;
+        for (Replica replica : eligible) {
+            // The pool of a replica is started with its first connection, until then nothing is in use
+            HikariPoolMXBean pool = replica.dataSource.getHikariPoolMXBean();
+            int active = pool == null ? 0 : pool.getActiveConnections();
+            if (active < leastActive) {
+                least = replica;
+                leastActive = active;
+            }
+        }
+        return least;
+    }
+
+    void checkLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                long lag = Math.max(0, queryLong(statement, lagQuery));
+                // Replaying only moves forward: the replica keeps this position until the next check
+                replica.replayedPosition = queryLong(statement, REPLAY_POSITION_SQL);
+                if (!replica.reachable) {
+                    log.info("Replica {} is reachable, {} ms behind", replica.name, lag);
+                    replica.reachable = true;
+                }
+                replica.lagMillis = lag;
+            } catch (SQLException | RuntimeException ex) {
+                // Logged once, and again after it was reachable in between
+                if (replica.reachable || !replica.checked) {
+                    log.warn("Replica {} is unreachable, its reads go to the primary", replica.name, ex);
+                    replica.reachable = false;
+                }
+                replica.lagMillis = -1;
+            }
+            replica.checked = true;
+        }
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+        primary.close();
+    }
+
+    static final class Replica {
+
+        final String name;
+        final HikariDataSource dataSource;
+        final Counter connections;
+        // Unknown until the first successful check
+        volatile long lagMillis = -1;
+        volatile long replayedPosition;
+        // Only used by the lag check thread
+        boolean checked;
+        boolean reachable;
+
+        Replica(HikariDataSource dataSource, Counter connections) {
+            this.name = dataSource.getPoolName();
+            this.dataSource = dataSource;
+            this.connections = connections;
+        }
+    }
+
+    private static final class ReadContext {
+
+        final long lastWritePosition;
+        // Shared with the async thread of a streamed response
+        volatile Replica replica;
+
+        ReadContext(long lastWritePosition) {
+            this.lastWritePosition = lastWritePosition;
+        }
+    }
+}
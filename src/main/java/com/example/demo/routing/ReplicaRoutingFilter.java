@@ -0,0 +1,179 @@
+package com.example.demo.routing;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+
+/*
+ * Decides per request whether ReplicaRoutingDataSource may read from a replica
+ *
+ * GET and HEAD requests may, and POST /tasks/lookup which only reads. All other requests only use
+ * the primary. Their successful (2xx) responses under /tasks carry the tasks_last_write cookie with the
+ * WAL position of the primary after the request, and while a client sends it back its reads only go to
+ * replicas which already replayed up to that position (read-your-writes), else to the primary
+ * Failed requests and other paths wrote nothing to read back, and don't cost the position query
+ *
+ * Does nothing when no replicas are configured
+ */
+@Component
+public class ReplicaRoutingFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingFilter.class);
+
+    static final String LAST_WRITE_COOKIE = "tasks_last_write";
+
+    // POST requests which only read
+    private static final String READ_ONLY_POST = "/tasks/lookup";
+    // The paths whose requests write Tasks
+    private static final String TASKS_PATH = "/tasks";
+
+    private final ReplicaRoutingDataSource routingDataSource;
+
+    public ReplicaRoutingFilter(DataSource dataSource) {
+        this.routingDataSource = dataSource instanceof ReplicaRoutingDataSource routing ? routing : null;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return routingDataSource == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String method = request.getMethod();
+        if (method.equals("GET") || method.equals("HEAD") || isReadOnlyPost(request)) {
+            ReplicaRoutingDataSource.allowReplicaReads(lastWrite(request));
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                ReplicaRoutingDataSource.clearReads();
+            }
+            return;
+        }
+        if (!isTasksPath(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        LastWriteResponse lastWriteResponse = new LastWriteResponse(response);
+        chain.doFilter(request, lastWriteResponse);
+        lastWriteResponse.addLastWriteCookie();
+    }
+
+    private static boolean isReadOnlyPost(HttpServletRequest request) {
+        return request.getMethod().equals("POST") && path(request).equals(READ_ONLY_POST);
+    }
+
+    private static boolean isTasksPath(HttpServletRequest request) {
+        String path = path(request);
+        return path.equals(TASKS_PATH) || path.startsWith(TASKS_PATH + "/");
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (cookie.getName().equals(LAST_WRITE_COOKIE)) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException ex) {
+                    // Not a cookie of ours, read from the primary to be safe
+                    return Long.MAX_VALUE;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Adds the cookie to a 2xx response just before it is written, when the handler already committed its changes
+     * Taking the position at the start of the request would be before the commit, and a replica could
+     * look up to date without having the write
+     * The cookie lives as long as the browser session: once every replica replayed past it, it costs nothing
+     */
+    private class LastWriteResponse extends HttpServletResponseWrapper {
+
+        private boolean cookieAdded;
+
+        LastWriteResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        void addLastWriteCookie() {
+            if (cookieAdded || isCommitted()) {
+                return;
+            }
+            cookieAdded = true;
+            if (getStatus() < 200 || getStatus() >= 300) {
+                return;
+            }
+            long position;
+            try {
+                position = routingDataSource.getWritePosition();
+            } catch (SQLException | RuntimeException ex) {
+                // The client keeps the cookie of its previous write, if any
+                log.warn("Reading the WAL position of the primary failed, no tasks_last_write cookie is set", ex);
+                return;
+            }
+            ResponseCookie cookie = ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(position))
+                .path("/")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .build();
+            addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addLastWriteCookie();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addLastWriteCookie();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addLastWriteCookie();
+            super.flushBuffer();
+        }
+
+        // An error response gets no cookie
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            cookieAdded = true;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            cookieAdded = true;
+            super.sendError(sc);
+        }
+    }
+}
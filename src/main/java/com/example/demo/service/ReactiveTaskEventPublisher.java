@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/*
+ * TaskEventPublisher for the reactive stack: the same NOTIFY, sent over R2DBC
+ *
+ * The servlet instances of a mixed deployment pass the events on to their GET /tasks/stream subscribers
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTaskEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveTaskEventPublisher.class);
+
+    private static final String NOTIFY_SQL = "SELECT pg_notify('" + TaskEventPublisher.CHANNEL + "',"
+        + " nextval('task_events_seq') || ':' || e) FROM unnest(CAST(:events AS text[])) AS e";
+
+    private final DatabaseClient databaseClient;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public ReactiveTaskEventPublisher(
+            DatabaseClient databaseClient,
+            ObjectMapper objectMapper,
+            @Value("${tasks.events.enabled:true}") boolean enabled) {
+        this.databaseClient = databaseClient;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    public Mono<Void> publish(TaskEvent event) {
+        return publish(List.of(event));
+    }
+
+    /*
+     * Sends the events in one round trip, completes once they were sent
+     * A failure is logged and doesn't fail the change, like in TaskEventPublisher
+     *
+     * @param events        The events, in the order the subscribers should see them
+     */
+    public Mono<Void> publish(List<TaskEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return Mono.empty();
+        }
+        String[] payloads = new String[events.size()];
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                payloads[i] = TaskEventPublisher.INSTANCE_ID + ':' + objectMapper.writeValueAsString(events.get(i));
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("Sending {} task events failed", events.size(), ex);
+            return Mono.empty();
+        }
+        return databaseClient.sql(NOTIFY_SQL)
+            .bind("events", payloads)
+            .then()
+            .onErrorResume(ex -> {
+                log.warn("Sending {} task events failed", events.size(), ex);
+                return Mono.empty();
+            });
+    }
+}
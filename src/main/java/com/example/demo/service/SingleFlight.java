@@ -0,0 +1,161 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Runs concurrent calls for the same key once: the first caller (the leader) runs the call, callers
+ * arriving while it runs wait for its result instead of running their own
+ *
+ * Each key has its own deadline, timeout after its leader started. Later callers don't join a call past its
+ * deadline, and waiting callers stop waiting at it: the next one runs the call again and becomes the new
+ * leader, so one hanging call doesn't hold up every later caller of its key
+ *
+ * freshness: a caller only joins a call of a leader with at least its freshness, e.g. a lookup which
+ * has to read the primary doesn't join one which may read a replica, see ReplicaRoutingDataSource
+ *
+ * written: a write of a key moves on its generation. Callers only join a call started in the current
+ * generation of its key, so a caller arriving after a write never gets a result read before it, and
+ * isSuperseded tells the callers of an older call not to keep its result, e.g. in a cache. Keys share
+ * GENERATION_STRIPES generations by hash, a write may stop coalescing of a few other keys for a moment
+ */
+class SingleFlight<K, V> {
+
+    /*
+     * The call to coalesce, e.g. ProceedingJoinPoint::proceed
+     */
+    interface Call<V> {
+        V call() throws Throwable;
+    }
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong allGeneration = new AtomicLong();
+    private final ThreadLocal<Boolean> superseded = new ThreadLocal<>();
+    private final long timeoutNanos;
+    private final Counter executedCounter;
+    private final Counter coalescedCounter;
+    private final Counter timedOutCounter;
+
+    /*
+     * @param timeoutNanos      How long callers wait for a leader
+     * @param executedCounter   Counts the calls which were run
+     * @param coalescedCounter  Counts the callers which got the result of another caller's call
+     * @param timedOutCounter   Counts the callers which stopped waiting at the deadline
+     */
+    SingleFlight(long timeoutNanos, Counter executedCounter, Counter coalescedCounter, Counter timedOutCounter) {
+        this.timeoutNanos = timeoutNanos;
+        this.executedCounter = executedCounter;
+        this.coalescedCounter = coalescedCounter;
+        this.timedOutCounter = timedOutCounter;
+    }
+
+    V run(K key, long freshness, Call<V> call) throws Throwable {
+        while (true) {
+            long generation = generation(key);
+            Flight<V> mine = new Flight<>(System.nanoTime() + timeoutNanos, freshness, generation);
+            Flight<V> flight = flights.compute(key, (k, running) ->
+                running != null && running.canServe(freshness, generation, System.nanoTime()) ? running : mine);
+            if (flight == mine) {
+                V result = lead(key, mine, call);
+                superseded.set(generation(key) != mine.generation);
+                return result;
+            }
+            try {
+                V result = flight.result.get(flight.deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                coalescedCounter.increment();
+                superseded.set(generation(key) != flight.generation);
+                return result;
+            } catch (ExecutionException ex) {
+                coalescedCounter.increment();
+                throw ex.getCause();
+            } catch (TimeoutException ex) {
+                // The flight is past its deadline now, the next round starts a new one
+                timedOutCounter.increment();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw ex;
+            }
+        }
+    }
+
+    private V lead(K key, Flight<V> flight, Call<V> call) throws Throwable {
+        try {
+            V result = call.call();
+            flight.result.complete(result);
+            return result;
+        } catch (Throwable ex) {
+            flight.result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            // A newer leader may have replaced it already
+            flights.remove(key, flight);
+            executedCounter.increment();
+        }
+    }
+
+    /*
+     * Callers from now on don't join calls for key which started before
+     */
+    void written(K key) {
+        generations.incrementAndGet(stripe(key));
+    }
+
+    /*
+     * Callers from now on don't join any call which started before
+     */
+    void writtenAll() {
+        allGeneration.incrementAndGet();
+    }
+
+    /*
+     * Whether the key was written since the call whose result the current thread's last run returned started,
+     * so the result may be older than the write. Cleared by the call
+     */
+    boolean isSuperseded() {
+        Boolean wasSuperseded = superseded.get();
+        superseded.remove();
+        return wasSuperseded != null && wasSuperseded;
+    }
+
+    // Both parts only grow, so the sum changes with every write
+    private long generation(K key) {
+        return allGeneration.get() + generations.get(stripe(key));
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    int getInFlight() {
+        return flights.size();
+    }
+
+    private static final class Flight<V> {
+
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final long deadlineNanos;
+        private final long freshness;
+        private final long generation;
+
+        private Flight(long deadlineNanos, long freshness, long generation) {
+            this.deadlineNanos = deadlineNanos;
+            this.freshness = freshness;
+            this.generation = generation;
+        }
+
+        private boolean canServe(long wantedFreshness, long currentGeneration, long nowNanos) {
+            return freshness >= wantedFreshness && generation == currentGeneration && nowNanos - deadlineNanos < 0;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskCopyFormat;
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.dto.TaskImport;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.ServerErrorMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import javax.sql.DataSource;
+
+/*
+ * Bulk export and import of Tasks with PostgreSQL COPY
+ *
+ * Both directions stream between the HTTP body and the database connection in COPY_BUFFER_SIZE chunks,
+ * no Task entity is created, so memory stays flat regardless of the number of Tasks
+ *
+ * An import first spools the upload to a temporary file next to the reject files, so its transaction and
+ * pooled connection are only taken once the client sent everything, however slowly it uploads. It then copies
+ * the file into a temporary staging table first and then inserts the valid rows with
+ * one INSERT ... ON CONFLICT (title) DO NOTHING. Rows with a taken title (in the table or earlier in the
+ * file) or without title or description are written to a reject file instead of aborting the import.
+ * All rows are inserted in one transaction, a malformed file imports nothing
+ *
+ * Imported Tasks get new ids and version 0. They are not sent to the change feed one by one,
+ * a reset event tells the subscribers to read the list again. Their titles are added to the TaskTitleIndex once they are committed, a large import rebuilds it instead
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Service
+public class TaskCopyService {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskCopyService.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // The CSV header is read before the COPY starts, to build its column list
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    // Columns of the CSV export, an import accepts any of them in any order. id and version are
+    // ignored on import, imported Tasks get new ones
+    static final List<String> CSV_COLUMNS = List.of("id", "title", "description", "completed", "version", "updated_at");
+
+    static final String EXPORT_CSV_SQL = "COPY (SELECT id, title, description, completed, version, updated_at"
+        + " FROM tasks ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    // One JSON object per line. As CSV with quote and delimiter characters that JSON only has escaped,
+    // COPY writes each object unchanged, while its text format would double every backslash
+    private static final String JSON_LINES = "WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
+
+    static final String EXPORT_NDJSON_SQL = "COPY (SELECT row_to_json(t) FROM (SELECT id, title, description,"
+        + " completed, version, updated_at AS \"updatedAt\" FROM tasks ORDER BY id) t) TO STDOUT " + JSON_LINES;
+
+    // Dropped explicitly at the end, ON COMMIT DROP covers imports which fail
+    private static final String CREATE_STAGING_SQL = "CREATE TEMP TABLE tasks_import ("
+        + " line bigint GENERATED BY DEFAULT AS IDENTITY, id bigint, title text, description text,"
+        + " completed boolean, version bigint, updated_at timestamptz, error text) ON COMMIT DROP";
+
+    private static final String CREATE_JSON_STAGING_SQL = "CREATE TEMP TABLE tasks_import_json ("
+        + " line bigint GENERATED ALWAYS AS IDENTITY, doc jsonb) ON COMMIT DROP";
+
+    private static final String COPY_JSON_SQL = "COPY tasks_import_json (doc) FROM STDIN " + JSON_LINES;
+
+    // Blank lines are skipped, their line numbers stay the same as in the file
+    private static final String UNPACK_JSON_SQL = "INSERT INTO tasks_import (line, title, description, completed, updated_at)"
+        + " SELECT line, doc->>'title', doc->>'description', (doc->>'completed')::boolean, (doc->>'updatedAt')::timestamptz"
+        + " FROM tasks_import_json WHERE doc IS NOT NULL";
+
+    private static final String VALIDATE_SQL = "UPDATE tasks_import SET error = CASE"
+        + " WHEN coalesce(btrim(title), '') = '' THEN 'Title is required' ELSE 'Description is required' END"
+        + " WHERE coalesce(btrim(title), '') = '' OR coalesce(btrim(description), '') = ''";
+
+    // Like POST /tasks/batch, the first row with a title wins
+    private static final String REJECT_REPEATED_SQL = "UPDATE tasks_import i SET error = 'Task Title already exists.'"
+        + " FROM (SELECT line, row_number() OVER (PARTITION BY title ORDER BY line) AS n"
+        + " FROM tasks_import WHERE error IS NULL) d"
+        + " WHERE i.line = d.line AND d.n > 1";
+
+    // The id comes from the same sequence as the JPA inserts, see ReactiveTaskRepository.INSERT_SQL
+    // Rows whose title is taken, also by a concurrent request, are skipped by the INSERT and marked afterwards
+    private static final String INSERT_SQL = "WITH inserted AS ("
+        + " INSERT INTO tasks (id, title, description, completed, version, updated_at)"
+        + " SELECT nextval('tasks_seq'), title, description, coalesce(completed, false), 0, coalesce(updated_at, now())"
+        + " FROM tasks_import WHERE error IS NULL ORDER BY line"
+        + " ON CONFLICT (title) DO NOTHING RETURNING title)"
+        + " UPDATE tasks_import i SET error = 'Task Title already exists.'"
+        + " WHERE i.error IS NULL AND NOT EXISTS (SELECT 1 FROM inserted WHERE inserted.title = i.title)";
+
+    private static final String COUNT_SQL = "SELECT count(*) FILTER (WHERE error IS NULL),"
+        + " count(*) FILTER (WHERE error IS NOT NULL) FROM tasks_import";
+
+    private static final String IMPORTED_TITLES_SQL = "SELECT title FROM tasks_import WHERE error IS NULL";
+
+    // Up to this many imported titles are added to the title index one by one, larger imports rebuild it
+    private static final int MAX_INDEXED_TITLES = 10_000;
+
+    private static final String CSV_REJECTS_SQL = "COPY (SELECT line AS row, error, title, description, completed, updated_at"
+        + " FROM tasks_import WHERE error IS NOT NULL ORDER BY line) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    // The rejected objects as they were uploaded, parsed as jsonb their keys may come in another order
+    private static final String NDJSON_REJECTS_SQL = "COPY (SELECT row_to_json(r) FROM (SELECT i.line AS row, i.error,"
+        + " j.doc AS task FROM tasks_import i JOIN tasks_import_json j USING (line) WHERE i.error IS NOT NULL"
+        + " ORDER BY i.line) r) TO STDOUT " + JSON_LINES;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TaskTitleIndex titleIndex;
+    private final TaskEventPublisher eventPublisher;
+    private final Path rejectDirectory;
+    private final Counter importedCounter;
+    private final Counter rejectedCounter;
+    // Running and finished imports, a reject file is deleted together with its import
+    private final Cache<String, TaskImport> imports;
+
+    public TaskCopyService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            TaskTitleIndex titleIndex,
+            TaskEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${tasks.import.reject-dir:${java.io.tmpdir}/task-imports}") Path rejectDirectory,
+            @Value("${tasks.import.retention:24h}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.titleIndex = titleIndex;
+        this.eventPublisher = eventPublisher;
+        this.rejectDirectory = rejectDirectory;
+        this.importedCounter = rowCounter(meterRegistry, "imported");
+        this.rejectedCounter = rowCounter(meterRegistry, "rejected");
+        this.imports = Caffeine.newBuilder()
+            .expireAfterWrite(retention)
+            .<String, TaskImport>removalListener((id, taskImport, cause) -> deleteRejects(taskImport))
+            .build();
+    }
+
+    private static Counter rowCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("tasks.import.rows")
+            .description("Rows of POST /tasks/import, inserted or written to the reject file")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /*
+     * Writes every Task to the given stream, ordered by id, while the database sends them
+     *
+     * @param out           The stream to write to (usually the HTTP response body)
+     * @param format        CSV with a header row, or NDJSON
+     */
+    public void exportTasks(OutputStream out, TaskCopyFormat format) throws IOException {
+        long start = System.nanoTime();
+        String sql = format == TaskCopyFormat.CSV ? EXPORT_CSV_SQL : EXPORT_NDJSON_SQL;
+        long rows = inTransaction(readOnlyTransaction, copyManager -> copyManager.copyOut(sql, out));
+        log.info("Exported {} tasks as {} in {} ms", rows, format, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /*
+     * Imports the Tasks of an uploaded file
+     *
+     * @param in            The file, usually the request body
+     * @param format        CSV with a header row naming the columns, or NDJSON
+     * @param totalBytes    The size of the file for the progress, null if unknown
+     * @return the finished import, with its counts
+     * @throws IllegalArgumentException if the file can't be read as the format, nothing is imported then
+     */
+    public TaskImport importTasks(InputStream in, TaskCopyFormat format, Long totalBytes) throws IOException {
+        TaskImport taskImport = new TaskImport(UUID.randomUUID().toString(), format, Instant.now(), totalBytes);
+        imports.put(taskImport.getId(), taskImport);
+        log.info("Import {} of {} started ({} bytes)", taskImport.getId(), format, totalBytes);
+        Path upload = null;
+        try {
+            Files.createDirectories(rejectDirectory);
+            upload = Files.createTempFile(rejectDirectory, taskImport.getId() + "-upload", "."
+                + format.getFileExtension());
+            Files.copy(new ProgressInputStream(in, taskImport), upload, StandardCopyOption.REPLACE_EXISTING);
+
+            taskImport.setState(TaskImport.State.COPYING);
+            ImportResult result;
+            try (InputStream file = new BufferedInputStream(Files.newInputStream(upload), COPY_BUFFER_SIZE)) {
+                result = inTransaction(transaction, copyManager -> copyAndInsert(copyManager, file, taskImport));
+            }
+
+            // Committed: the imported titles must not be reported absent from now on
+            if (result.titles().size() < result.imported()) {
+                titleIndex.rebuild();
+            } else {
+                result.titles().forEach(titleIndex::add);
+            }
+            if (result.imported() > 0) {
+                eventPublisher.publish(TaskEvent.reset());
+            }
+            taskImport.setImported(result.imported());
+            taskImport.setRejected(result.rejected());
+            taskImport.setState(TaskImport.State.COMPLETED);
+            importedCounter.increment(result.imported());
+            rejectedCounter.increment(result.rejected());
+            return taskImport;
+        } catch (IOException | RuntimeException ex) {
+            taskImport.setState(TaskImport.State.FAILED);
+            taskImport.setError(ex.getMessage());
+            deleteRejects(taskImport);
+            throw ex;
+        } finally {
+            if (upload != null) {
+                deleteFile(upload, taskImport);
+            }
+            taskImport.setFinishedAt(Instant.now());
+            log.info("Import {} {}: {} imported, {} rejected, {} bytes in {} ms", taskImport.getId(),
+                taskImport.getState(), taskImport.getImported(), taskImport.getRejected(), taskImport.getBytesRead(),
+                Duration.between(taskImport.getStartedAt(), taskImport.getFinishedAt()).toMillis());
+        }
+    }
+
+    // Runs in the import transaction, from the COPY of the spooled upload to the reject file
+    private ImportResult copyAndInsert(CopyManager copyManager, InputStream file, TaskImport taskImport)
+            throws SQLException, IOException {
+        TaskCopyFormat format = taskImport.getFormat();
+        if (format == TaskCopyFormat.CSV) {
+            copyCsv(copyManager, file);
+        } else {
+            jdbcTemplate.execute(CREATE_STAGING_SQL);
+            jdbcTemplate.execute(CREATE_JSON_STAGING_SQL);
+            copyManager.copyIn(COPY_JSON_SQL, file, COPY_BUFFER_SIZE);
+            jdbcTemplate.update(UNPACK_JSON_SQL);
+        }
+
+        taskImport.setState(TaskImport.State.INSERTING);
+        jdbcTemplate.update(VALIDATE_SQL);
+        jdbcTemplate.update(REJECT_REPEATED_SQL);
+        jdbcTemplate.update(INSERT_SQL);
+        long[] counts = jdbcTemplate.queryForObject(COUNT_SQL,
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)});
+        // Read before the staging table is dropped, the index only gets them after the commit
+        List<String> titles = counts[0] > 0 && counts[0] <= MAX_INDEXED_TITLES
+            ? jdbcTemplate.queryForList(IMPORTED_TITLES_SQL, String.class)
+            : List.of();
+
+        if (counts[1] > 0) {
+            taskImport.setState(TaskImport.State.WRITING_REJECTS);
+            try (OutputStream rejects = Files.newOutputStream(rejectFile(taskImport))) {
+                copyManager.copyOut(format == TaskCopyFormat.CSV ? CSV_REJECTS_SQL : NDJSON_REJECTS_SQL, rejects);
+            }
+        }
+        jdbcTemplate.execute("DROP TABLE tasks_import");
+        if (format == TaskCopyFormat.NDJSON) {
+            jdbcTemplate.execute("DROP TABLE tasks_import_json");
+        }
+        return new ImportResult(counts[0], counts[1], titles);
+    }
+
+    // COPY can't map the columns by the header, so it's read here and becomes the column list
+    private void copyCsv(CopyManager copyManager, InputStream in) throws SQLException, IOException {
+        byte[] header = readHeader(in);
+        String columns = String.join(", ", parseHeader(new String(header, StandardCharsets.UTF_8)));
+        jdbcTemplate.execute(CREATE_STAGING_SQL);
+        // The header is copied as well and skipped by COPY, so its line numbers match the file
+        InputStream file = new SequenceInputStream(new ByteArrayInputStream(header), in);
+        copyManager.copyIn("COPY tasks_import (" + columns + ") FROM STDIN WITH (FORMAT csv, HEADER)",
+            file, COPY_BUFFER_SIZE);
+    }
+
+    private static byte[] readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int next;
+        while ((next = in.read()) != -1) {
+            header.write(next);
+            if (next == '\n') {
+                break;
+            }
+            if (header.size() > MAX_HEADER_LENGTH) {
+                throw new IllegalArgumentException("The CSV header is longer than " + MAX_HEADER_LENGTH + " bytes.");
+            }
+        }
+        return header.toByteArray();
+    }
+
+    /*
+     * @param header        The first line of a CSV file, e.g. "title,description,completed"
+     * @return the staging table columns in the order of the header
+     * @throws IllegalArgumentException for unknown or repeated columns, or without title and description
+     */
+    static List<String> parseHeader(String header) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (String name : header.strip().split(",", -1)) {
+            String column = name.strip().replace("\"", "").toLowerCase(Locale.ROOT);
+            if (column.equals("updatedat")) {
+                column = "updated_at";
+            }
+            if (!CSV_COLUMNS.contains(column) || !columns.add(column)) {
+                throw new IllegalArgumentException("The CSV header must name each column once, columns are: "
+                    + String.join(", ", CSV_COLUMNS) + ".");
+            }
+        }
+        if (!columns.contains("title") || !columns.contains("description")) {
+            throw new IllegalArgumentException("The CSV header must contain the title and description columns.");
+        }
+        return new ArrayList<>(columns);
+    }
+
+    public Optional<TaskImport> findImport(String id) {
+        return Optional.ofNullable(imports.getIfPresent(id));
+    }
+
+    // Newest first
+    public List<TaskImport> findImports() {
+        List<TaskImport> result = new ArrayList<>(imports.asMap().values());
+        result.sort(Comparator.comparing(TaskImport::getStartedAt).reversed());
+        return result;
+    }
+
+    /*
+     * @return the reject file of a completed import, empty if it had no rejected rows
+     */
+    public Optional<Path> findRejects(TaskImport taskImport) {
+        if (taskImport.getState() != TaskImport.State.COMPLETED || taskImport.getRejected() == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(rejectFile(taskImport));
+    }
+
+    // The id is always a UUID generated here, never text from the request
+    private Path rejectFile(TaskImport taskImport) {
+        return rejectDirectory.resolve(taskImport.getId() + "-rejects." + taskImport.getFormat().getFileExtension());
+    }
+
+    private void deleteRejects(TaskImport taskImport) {
+        deleteFile(rejectFile(taskImport), taskImport);
+    }
+
+    private static void deleteFile(Path file, TaskImport taskImport) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Deleting {} of import {} failed", file, taskImport.getId(), ex);
+        }
+    }
+
+    /*
+     * @param titles        The imported titles, empty if there were more than MAX_INDEXED_TITLES
+     */
+    private record ImportResult(long imported, long rejected, List<String> titles) {
+    }
+
+    private interface CopyWork<T> {
+        T run(CopyManager copyManager) throws SQLException, IOException;
+    }
+
+    /*
+     * Runs the work in a transaction, the CopyManager and jdbcTemplate use the connection of the transaction
+     * Data errors reported by PostgreSQL, e.g. a malformed row, become IllegalArgumentExceptions
+     */
+    private <T> T inTransaction(TransactionTemplate template, CopyWork<T> work) throws IOException {
+        try {
+            return template.execute(status -> {
+                DataSource dataSource = jdbcTemplate.getDataSource();
+                Connection connection = DataSourceUtils.getConnection(dataSource);
+                try {
+                    return work.run(connection.unwrap(PGConnection.class).getCopyAPI());
+                } catch (SQLException ex) {
+                    throw translate(ex);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } finally {
+                    DataSourceUtils.releaseConnection(connection, dataSource);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private RuntimeException translate(SQLException ex) {
+        String sqlState = ex.getSQLState();
+        // Class 22: data exceptions, e.g. invalid input syntax, a missing column or malformed JSON
+        if (ex instanceof PSQLException psqlException && sqlState != null && sqlState.startsWith("22")) {
+            ServerErrorMessage message = psqlException.getServerErrorMessage();
+            String where = message == null || message.getWhere() == null ? "" : " (" + message.getWhere() + ")";
+            return new IllegalArgumentException((message == null ? ex.getMessage() : message.getMessage()) + where, ex);
+        }
+        DataAccessException translated = jdbcTemplate.getExceptionTranslator().translate("COPY", null, ex);
+        return translated != null ? translated : new UncategorizedSQLException("COPY", null, ex);
+    }
+
+    /*
+     * Counts the bytes read from the upload into the progress of the import
+     */
+    private static class ProgressInputStream extends FilterInputStream {
+
+        private final TaskImport taskImport;
+        private long bytesRead;
+
+        ProgressInputStream(InputStream in, TaskImport taskImport) {
+            super(in);
+            this.taskImport = taskImport;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int next = super.read();
+            if (next != -1) {
+                taskImport.setBytesRead(++bytesRead);
+            }
+            return next;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytesRead += read;
+                taskImport.setBytesRead(bytesRead);
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Fans the Task change events out to the subscribers of GET /tasks/stream
+ *
+ * Every subscriber has its own queue of at most tasks.events.client-buffer events, drained by a small
+ * pool of sender threads, so a slow client never holds up the others. A client whose queue is full
+ * is disconnected and resumes with Last-Event-ID from the last tasks.events.ring-size events
+ * A "reset" event tells a client that events were lost and it has to read the Tasks again
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Service
+public class TaskEventBroadcaster {
+
+    static final String RESET_EVENT = "reset";
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // The most recent events, oldest first, guarded by this
+    private final Queue<Event> ring = new ArrayDeque<>();
+    private final int ringSize;
+    private final int clientBuffer;
+    private final int maxSubscribers;
+    private final Executor senders;
+    private final Counter droppedCounter;
+
+    @Autowired
+    public TaskEventBroadcaster(
+            MeterRegistry meterRegistry,
+            @Value("${tasks.events.ring-size:1024}") int ringSize,
+            @Value("${tasks.events.client-buffer:256}") int clientBuffer,
+            @Value("${tasks.events.max-subscribers:10000}") int maxSubscribers,
+            @Value("${tasks.events.sender-threads:8}") int senderThreads) {
+        this(meterRegistry, ringSize, clientBuffer, maxSubscribers,
+            Executors.newFixedThreadPool(senderThreads, new CustomizableThreadFactory("task-events-")));
+    }
+
+    TaskEventBroadcaster(MeterRegistry meterRegistry, int ringSize, int clientBuffer, int maxSubscribers, Executor senders) {
+        this.ringSize = ringSize;
+        this.clientBuffer = clientBuffer;
+        this.maxSubscribers = maxSubscribers;
+        this.senders = senders;
+        this.droppedCounter = Counter.builder("tasks.events.dropped")
+            .description("Subscribers disconnected because their event buffer was full")
+            .register(meterRegistry);
+        Gauge.builder("tasks.events.subscribers", subscribers, Set::size)
+            .description("Open GET /tasks/stream connections on this instance")
+            .register(meterRegistry);
+    }
+
+    /*
+     * Opens a new event stream
+     *
+     * @param lastEventId   The Last-Event-ID header of a reconnecting client, or null
+     * @return the emitter for the response, or an empty Optional when tasks.events.max-subscribers are connected
+     */
+    public Optional<SseEmitter> subscribe(String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = new SseEmitter();
+        subscribe(lastEventId, emitter);
+        return Optional.of(emitter);
+    }
+
+    void subscribe(String lastEventId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(ex -> subscribers.remove(subscriber));
+
+        // Replay and registration happen under the same lock as publish(), so no event is missed or sent twice
+        synchronized (this) {
+            if (lastEventId != null) {
+                List<Event> missed = eventsAfter(lastEventId);
+                if (missed == null || missed.size() > clientBuffer) {
+                    subscriber.offer(Event.reset());
+                } else {
+                    missed.forEach(subscriber::offer);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        subscriber.drain();
+    }
+
+    /*
+     * Sends an event received from the database to every subscriber of this instance
+     *
+     * @param id            The event id, sent to the client as the SSE id
+     * @param data          The event as JSON
+     */
+    public void publish(String id, String data) {
+        Event event = new Event(id, null, data);
+        synchronized (this) {
+            ring.add(event);
+            if (ring.size() > ringSize) {
+                ring.remove();
+            }
+            subscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+        subscribers.forEach(Subscriber::drain);
+    }
+
+    /*
+     * Tells every subscriber that events were lost, e.g. while the database connection was down
+     * Clients resuming from an event before the gap also get a reset, as the ring is cleared
+     */
+    public void reset() {
+        synchronized (this) {
+            ring.clear();
+            subscribers.forEach(subscriber -> subscriber.offer(Event.reset()));
+        }
+        subscribers.forEach(Subscriber::drain);
+    }
+
+    // Comments keep idle connections open through proxies and detect clients which went away
+    @Scheduled(fixedDelayString = "${tasks.events.heartbeat-interval:15s}")
+    public void heartbeat() {
+        Event heartbeat = new Event(null, null, null);
+        subscribers.forEach(subscriber -> {
+            subscriber.offer(heartbeat);
+            subscriber.drain();
+        });
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Iterator<Subscriber> it = subscribers.iterator(); it.hasNext(); ) {
+            it.next().emitter.complete();
+            it.remove();
+        }
+        if (senders instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+
+    // The events after the one with this id, or null if it isn't in the ring anymore
+    private List<Event> eventsAfter(String lastEventId) {
+        List<Event> missed = new ArrayList<>();
+        boolean found = false;
+        for (Event event : ring) {
+            if (found) {
+                missed.add(event);
+            } else if (event.id.equals(lastEventId)) {
+                found = true;
+            }
+        }
+        return found ? missed : null;
+    }
+
+    // An SSE event, a heartbeat comment when data is null
+    private record Event(String id, String name, String data) {
+
+        static Event reset() {
+            return new Event(null, RESET_EVENT, "{}");
+        }
+
+        SseEmitter.SseEventBuilder toSse() {
+            if (data == null) {
+                return SseEmitter.event().comment("");
+            }
+            SseEmitter.SseEventBuilder builder = SseEmitter.event();
+            if (id != null) {
+                builder.id(id);
+            }
+            if (name != null) {
+                builder.name(name);
+            }
+            return builder.data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(clientBuffer);
+        // Only one sender at a time writes to the emitter, events stay in order
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(Event event) {
+            if (!queue.offer(event) && subscribers.remove(this)) {
+                // Too slow: let it reconnect and catch up from the ring instead of buffering without bound
+                droppedCounter.increment();
+                emitter.complete();
+            }
+        }
+
+        void drain() {
+            if (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                Event event;
+                while ((event = queue.poll()) != null) {
+                    emitter.send(event.toSse());
+                }
+            } catch (IOException | IllegalStateException ex) {
+                // The client went away or the emitter was completed
+                subscribers.remove(this);
+                queue.clear();
+            } finally {
+                sending.set(false);
+            }
+            // An event offered after the last poll but before sending was reset
+            drain();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/*
+ * Receives the Task change events of all application instances with PostgreSQL LISTEN
+ * and hands them to the TaskEventBroadcaster
+ *
+ * Each event of another instance also evicts the changed Task from the tasks cache, so no instance keeps
+ * serving a Task another instance changed; a delete by completed flag or a lost connection clears the whole cache
+ * The events of this instance evict nothing, its writes already put the new Task into the cache
+ * A reset event, e.g. after an import, is passed on as a reset of the subscribers and evicts nothing
+ *
+ * LISTEN needs a connection of its own for the lifetime of the application, it is opened with the
+ * database.* settings outside the pool, so it doesn't take a pooled connection or trip leak detection
+ * After the connection was lost the subscribers get a reset, the events in between are gone
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Service
+public class TaskEventListener implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskEventListener.class);
+
+    // How long one wait for notifications blocks, bounds the time stop() waits for the thread
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+
+    private final TaskEventBroadcaster broadcaster;
+    private final Cache taskCache;
+    private final ObjectMapper objectMapper;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final boolean enabled;
+    private volatile boolean running;
+    private Thread thread;
+
+    public TaskEventListener(
+            TaskEventBroadcaster broadcaster,
+            CacheManager cacheManager,
+            ObjectMapper objectMapper,
+            @Value("${database.url}") String url,
+            @Value("${database.username}") String username,
+            @Value("${database.password}") String password,
+            @Value("${tasks.events.enabled:true}") boolean enabled) {
+        this.broadcaster = broadcaster;
+        this.taskCache = cacheManager.getCache("tasks");
+        this.objectMapper = objectMapper;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::listen, "task-events-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(POLL_TIMEOUT_MS * 4L);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        long reconnectDelay = 1_000;
+        boolean reconnect = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + TaskEventPublisher.CHANNEL);
+                }
+                if (reconnect) {
+                    log.info("Listening for task events again");
+                    // Changes of other instances may have been missed, and cached while disconnected
+                    clearCache();
+                    broadcaster.reset();
+                }
+                reconnectDelay = 1_000;
+                reconnect = true;
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Listening for task events failed, retrying in {} ms", reconnectDelay, ex);
+                reconnect = true;
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    // The payload is "<id>:<instance>:<json>", see TaskEventPublisher
+    void dispatch(String payload) {
+        int separator = payload.indexOf(':');
+        int instanceEnd = payload.indexOf(':', separator + 1);
+        if (separator < 1 || instanceEnd < 0) {
+            log.warn("Ignoring malformed task event: {}", payload);
+            return;
+        }
+        String event = payload.substring(instanceEnd + 1);
+        JsonNode node = read(event);
+        if (node != null && TaskEvent.RESET.equals(node.path("type").asText())) {
+            broadcaster.reset();
+            return;
+        }
+        if (!TaskEventPublisher.INSTANCE_ID.equals(payload.substring(separator + 1, instanceEnd))) {
+            evict(node);
+        }
+        broadcaster.publish(payload.substring(0, separator), event);
+    }
+
+    // Null if the event can't be read
+    private JsonNode read(String event) {
+        try {
+            return objectMapper.readTree(event);
+        } catch (JsonProcessingException ex) {
+            log.warn("Unreadable task event: {}", event);
+            return null;
+        }
+    }
+
+    // Evicts the Task named by the event, or every Task if the event names none or can't be read, see TaskEvent
+    private void evict(JsonNode event) {
+        if (taskCache == null) {
+            return;
+        }
+        JsonNode id = event == null ? null : event.get("id");
+        if (id != null && id.canConvertToLong()) {
+            taskCache.evict(id.asLong());
+        } else {
+            taskCache.clear();
+        }
+    }
+
+    private void clearCache() {
+        if (taskCache != null) {
+            taskCache.clear();
+        }
+    }
+}
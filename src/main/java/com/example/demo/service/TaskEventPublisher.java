@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * Sends Task change events to every application instance with PostgreSQL NOTIFY
+ *
+ * Each event gets its id from task_events_seq and is sent as "<id>:<instance>:<json>" on the task_events channel,
+ * TaskEventListener receives them, also on this instance, in commit order
+ * The instance lets TaskEventListener tell its own changes, which are already in its cache, from those of others
+ * Events are sent after the change was committed, a failure is logged and doesn't fail the change
+ */
+@Service
+public class TaskEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskEventPublisher.class);
+
+    static final String CHANNEL = "task_events";
+
+    // Identifies the events of this application instance, new with every start
+    static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    // One statement for any number of events, the rows of unnest are notified in array order
+    static final String NOTIFY_SQL = "SELECT pg_notify('" + CHANNEL + "', nextval('task_events_seq') || ':' || e)"
+        + " FROM unnest(?::text[]) AS e";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public TaskEventPublisher(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            @Value("${tasks.events.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    public void publish(TaskEvent event) {
+        publish(List.of(event));
+    }
+
+    /*
+     * Sends the events in one round trip
+     *
+     * @param events        The events, in the order the subscribers should see them
+     */
+    public void publish(List<TaskEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        try {
+            String[] payloads = new String[events.size()];
+            for (int i = 0; i < events.size(); i++) {
+                payloads[i] = INSTANCE_ID + ':' + objectMapper.writeValueAsString(events.get(i));
+            }
+            jdbcTemplate.query(NOTIFY_SQL, rs -> { }, (Object) payloads);
+        } catch (JsonProcessingException | DataAccessException ex) {
+            log.warn("Sending {} task events failed", events.size(), ex);
+        }
+    }
+}
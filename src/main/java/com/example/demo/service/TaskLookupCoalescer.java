@@ -0,0 +1,116 @@
+package com.example.demo.service;
+
+import com.example.demo.config.ReplicaReadCacheManager;
+import com.example.demo.routing.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/*
+ * Coalesces concurrent TaskRepository.findById and existsByTitle calls with the same argument into
+ * one query, see SingleFlight. A burst of requests for one Task missing the "tasks" cache, e.g. right
+ * after it was evicted, then costs a single query instead of one per request
+ *
+ * Runs inside the cache (see CacheConfig), so only cache misses get here, and outside the
+ * repository's read-only transaction, so waiting callers don't hold a connection
+ *
+ * Calls inside a transaction are not coalesced, they may need to see its uncommitted writes
+ * and other callers mustn't. Replica reads only join lookups at least as up to date as they
+ * need, see ReplicaRoutingDataSource.getReadFreshness
+ *
+ * Every write of the "tasks" cache, a @CachePut or @CacheEvict of a write or an eviction for another
+ * instance's write, moves on the generation of its Task (see SingleFlight.written): a findById after the
+ * write doesn't join a lookup which started before it, and TaskRepository.findById doesn't cache the
+ * result of such a lookup over the written Task, see isSuperseded
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class TaskLookupCoalescer implements ReplicaReadCacheManager.WriteListener {
+
+    private static final String TASKS_CACHE = "tasks";
+    private static final ThreadLocal<Boolean> SUPERSEDED = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final SingleFlight<Object, Object> findById;
+    private final SingleFlight<Object, Object> existsByTitle;
+
+    public TaskLookupCoalescer(
+            MeterRegistry meterRegistry,
+            @Value("${tasks.single-flight.enabled:true}") boolean enabled,
+            @Value("${tasks.single-flight.timeout:2s}") Duration timeout) {
+        this.enabled = enabled;
+        this.findById = singleFlight(meterRegistry, "findById", timeout);
+        this.existsByTitle = singleFlight(meterRegistry, "existsByTitle", timeout);
+    }
+
+    private static SingleFlight<Object, Object> singleFlight(MeterRegistry meterRegistry, String lookup, Duration timeout) {
+        return new SingleFlight<>(timeout.toNanos(),
+            lookupCounter(meterRegistry, lookup, "executed"),
+            lookupCounter(meterRegistry, lookup, "coalesced"),
+            lookupCounter(meterRegistry, lookup, "timed-out"));
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String lookup, String result) {
+        return Counter.builder("tasks.lookups")
+            .description("Task lookups which were run, answered by a concurrent identical lookup, or stopped waiting for one")
+            .tag("lookup", lookup)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    @Around("execution(* com.example.demo.repository.TaskRepository.findById(..)) && args(id)")
+    public Object coalesceFindById(ProceedingJoinPoint call, Object id) throws Throwable {
+        SUPERSEDED.remove();
+        Object result = coalesce(findById, id, call);
+        if (findById.isSuperseded()) {
+            SUPERSEDED.set(true);
+        }
+        return result;
+    }
+
+    @Around("execution(* com.example.demo.repository.TaskRepository.existsByTitle(..)) && args(title)")
+    public Object coalesceExistsByTitle(ProceedingJoinPoint call, Object title) throws Throwable {
+        return coalesce(existsByTitle, title, call);
+    }
+
+    private Object coalesce(SingleFlight<Object, Object> flights, Object key, ProceedingJoinPoint call) throws Throwable {
+        if (!enabled || key == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return call.proceed();
+        }
+        return flights.run(key, ReplicaRoutingDataSource.getReadFreshness(), call::proceed);
+    }
+
+    /*
+     * Whether the Task the current thread's last findById returned was written while it was looked up,
+     * so it mustn't be cached, e.g. in the unless of TaskRepository.findById's @Cacheable. Cleared by the call
+     */
+    public static boolean isSuperseded() {
+        Boolean superseded = SUPERSEDED.get();
+        SUPERSEDED.remove();
+        return superseded != null && superseded;
+    }
+
+    @Override
+    public void written(String cacheName, Object key) {
+        if (TASKS_CACHE.equals(cacheName) && key != null) {
+            findById.written(key);
+        }
+    }
+
+    @Override
+    public void writtenAll(String cacheName) {
+        if (TASKS_CACHE.equals(cacheName)) {
+            findById.writtenAll();
+        }
+    }
+}
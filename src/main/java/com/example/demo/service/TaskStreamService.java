@@ -0,0 +1,182 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskListFormat;
+import com.example.demo.model.Task;
+import com.example.demo.repository.TaskRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Service
+public class TaskStreamService {
+
+    private final TaskRepository taskRepository;
+    // One mapper per format, all copies of the application's ObjectMapper
+    private final Map<TaskListFormat, ObjectMapper> mappers = new EnumMap<>(TaskListFormat.class);
+    private final Map<TaskListFormat, ObjectWriter> taskWriters = new EnumMap<>(TaskListFormat.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public TaskStreamService(TaskRepository taskRepository, ObjectMapper objectMapper) {
+        this.taskRepository = taskRepository;
+        mappers.put(TaskListFormat.JSON, objectMapper);
+        mappers.put(TaskListFormat.NDJSON, objectMapper);
+        mappers.put(TaskListFormat.SMILE, objectMapper.copyWith(new SmileFactory()));
+        mappers.put(TaskListFormat.CBOR, objectMapper.copyWith(new CBORFactory()));
+        mappers.forEach((format, mapper) -> taskWriters.put(format, mapper.writerFor(Task.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)));
+    }
+
+    /*
+     * Writes every Task to the given stream while it is read from the database
+     * Each Task is detached once written so memory stays flat regardless of the table size
+     *
+     * With a field selection only those columns are read, as a projection which never enters
+     * the persistence context, so e.g. the description isn't fetched when it isn't wanted
+     *
+     * @param out           The stream to write to (usually the HTTP response body)
+     * @param format        The representation to write
+     * @param fields        The properties to write, or null for the whole Task
+     */
+    @Transactional(readOnly = true)
+    public void writeTasks(OutputStream out, TaskListFormat format, List<TaskField> fields) throws IOException {
+        if (fields == null) {
+            try (Stream<Task> tasks = taskRepository.streamAllOrderedById();
+                 ListWriter writer = new ListWriter(out, format)) {
+                Iterator<Task> iterator = tasks.iterator();
+                while (iterator.hasNext()) {
+                    Task task = iterator.next();
+                    writer.write(task);
+                    entityManager.detach(task);
+                }
+                writer.finish();
+            }
+            return;
+        }
+
+        try (Stream<Tuple> rows = streamColumns(fields);
+             ListWriter writer = new ListWriter(out, format)) {
+            Iterator<Tuple> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                writer.write(fields, iterator.next()::get);
+            }
+            writer.finish();
+        }
+    }
+
+    /*
+     * Writes the given Tasks like writeTasks, without a database, e.g. for benchmarks
+     *
+     * @param tasks         The Tasks to write
+     * @param out           The stream to write to
+     * @param format        The representation to write
+     * @param fields        The properties to write, or null for the whole Task
+     */
+    public void writeTasks(Iterator<Task> tasks, OutputStream out, TaskListFormat format, List<TaskField> fields)
+            throws IOException {
+        try (ListWriter writer = new ListWriter(out, format)) {
+            while (tasks.hasNext()) {
+                Task task = tasks.next();
+                if (fields == null) {
+                    writer.write(task);
+                } else {
+                    writer.write(fields, index -> fields.get(index).valueOf(task));
+                }
+            }
+            writer.finish();
+        }
+    }
+
+    // The properties are fixed enum values, never text from the request
+    private Stream<Tuple> streamColumns(List<TaskField> fields) {
+        String columns = fields.stream()
+            .map(field -> "t." + field.getProperty())
+            .collect(Collectors.joining(", "));
+        return entityManager.createQuery("select " + columns + " from Task t order by t.id", Tuple.class)
+            .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultStream();
+    }
+
+    /*
+     * Writes a JSON array, or one object per line for NDJSON, of Tasks in one of the formats
+     */
+    private class ListWriter implements Closeable {
+
+        private final JsonGenerator generator;
+        private final ObjectWriter taskWriter;
+        private final boolean ndjson;
+
+        ListWriter(OutputStream out, TaskListFormat format) throws IOException {
+            this.generator = mappers.get(format).createGenerator(out);
+            this.taskWriter = taskWriters.get(format);
+            this.ndjson = format == TaskListFormat.NDJSON;
+            // The servlet container owns the response stream, only flush it
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            if (ndjson) {
+                generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartArray();
+            }
+        }
+
+        void write(Task task) throws IOException {
+            taskWriter.writeValue(generator, task);
+            endValue();
+        }
+
+        // values returns the value of the field at the given index
+        void write(List<TaskField> fields, IntFunction<Object> values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < fields.size(); i++) {
+                generator.writeFieldName(fields.get(i).getProperty());
+                generator.writeObject(values.apply(i));
+            }
+            generator.writeEndObject();
+            endValue();
+        }
+
+        private void endValue() throws IOException {
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        }
+
+        // Only called once every Task was written, a failed list must not end like a complete one
+        void finish() throws IOException {
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+}
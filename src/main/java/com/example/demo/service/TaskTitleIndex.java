@@ -0,0 +1,169 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+/*
+ * In-memory index of the taken Task titles, a TitleBloomFilter
+ *
+ * Answers whether a title is certainly not taken, so POST /tasks/batch only asks the database
+ * about the titles which might be. The unique constraint on the title stays the authority: titles
+ * written by other instances are only known after the next rebuild, and a batch which then fails
+ * on the constraint is checked again against the database
+ *
+ * The filter is loaded at startup and rebuilt every tasks.title-index.rebuild-interval, which also
+ * forgets deleted titles. A rebuild reads all titles into a new filter while writes keep adding to both,
+ * and then replaces the old one, writes never wait for it
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class TaskTitleIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskTitleIndex.class);
+
+    // Rows read per round trip while loading the titles
+    private static final int FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final long expectedTitles;
+    private final double falsePositiveRate;
+    private final long rebuildIntervalNanos;
+    private final Counter absentCounter;
+    private final Counter maybeTakenCounter;
+
+    // Null until the first load finished, then every title is checked against the database
+    private volatile TitleBloomFilter filter;
+    // The filter being loaded, gets the titles written during the rebuild
+    private volatile TitleBloomFilter building;
+    private volatile boolean stale;
+    private long builtAt;
+
+    public TaskTitleIndex(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${tasks.title-index.enabled:true}") boolean enabled,
+            @Value("${tasks.title-index.expected-titles:1000000}") long expectedTitles,
+            @Value("${tasks.title-index.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${tasks.title-index.rebuild-interval:10m}") Duration rebuildInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.expectedTitles = expectedTitles;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildIntervalNanos = rebuildInterval.toNanos();
+        this.absentCounter = checkCounter(meterRegistry, "absent");
+        this.maybeTakenCounter = checkCounter(meterRegistry, "maybe-taken");
+        Gauge.builder("tasks.title_index.size", this, index -> index.filter == null ? 0 : index.filter.getByteSize())
+            .description("Memory used by the title index")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    private static Counter checkCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("tasks.title_index.checks")
+            .description("Titles checked against the title index, absent ones need no database lookup")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /*
+     * @return true if no Task has this title, as far as this instance knows
+     *         false if it may be taken, or before the index is loaded
+     */
+    public boolean isAbsent(String title) {
+        TitleBloomFilter current = filter;
+        if (current == null) {
+            return false;
+        }
+        boolean absent = !current.mightContain(title);
+        (absent ? absentCounter : maybeTakenCounter).increment();
+        return absent;
+    }
+
+    /*
+     * Records a title which was just written, must be called after the write committed
+     */
+    public void add(String title) {
+        // The filter being built first: a rebuild replaces the filter before it clears building, so if
+        // building was already cleared the filter read afterwards is the new one
+        TitleBloomFilter next = building;
+        if (next != null) {
+            next.add(title);
+        }
+        TitleBloomFilter current = filter;
+        if (current != null) {
+            current.add(title);
+        }
+    }
+
+    /*
+     * Asks for a rebuild with the next check, e.g. when a title taken by another instance was reported absent
+     */
+    public void markStale() {
+        stale = true;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${tasks.title-index.check-interval:10s}")
+    public void rebuildIfDue() {
+        if (!enabled) {
+            return;
+        }
+        if (filter == null || stale || System.nanoTime() - builtAt >= rebuildIntervalNanos) {
+            rebuild();
+        }
+    }
+
+    /*
+     * Loads all titles into a new filter and replaces the current one with it, e.g. after a large import
+     * The new filter has room for twice the current titles, at least tasks.title-index.expected-titles
+     */
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        stale = false;
+        try {
+            long titles = readOnlyTransaction.execute(status -> {
+                Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM tasks", Long.class);
+                TitleBloomFilter next = new TitleBloomFilter(Math.max(expectedTitles, 2 * count), falsePositiveRate);
+                // Set before reading, so a title committed after the read started still gets in
+                building = next;
+                JdbcTemplate cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+                cursor.setFetchSize(FETCH_SIZE);
+                long[] read = new long[1];
+                cursor.query("SELECT title FROM tasks", row -> {
+                    next.add(row.getString(1));
+                    read[0]++;
+                });
+                filter = next;
+                return read[0];
+            });
+            builtAt = System.nanoTime();
+            log.info("Title index loaded with {} titles in {} ms, {} KB", titles,
+                (builtAt - start) / 1_000_000, filter.getByteSize() / 1024);
+        } catch (RuntimeException ex) {
+            // The old filter stays in use, or titles keep being checked against the database
+            stale = true;
+            log.warn("Loading the title index failed", ex);
+        } finally {
+            building = null;
+        }
+    }
+}
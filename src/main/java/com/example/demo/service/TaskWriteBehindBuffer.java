@@ -0,0 +1,206 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.model.Task;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Write-behind for completion toggles (PUT /tasks/{id} with only "completed")
+ *
+ * Accepted toggles are kept per task id, a later toggle replaces an earlier one, and written
+ * to the database in batched UPDATEs every tasks.write-behind.flush-interval
+ * The buffer holds at most tasks.write-behind.max-pending tasks, when it is full or disabled
+ * offer() returns false and the caller writes synchronously, which slows the client down
+ */
+@Service
+public class TaskWriteBehindBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskWriteBehindBuffer.class);
+
+    // Changes only the rows whose flag differs, so repeated toggles don't bump the version,
+    // and returns the changed rows
+    static final String FLUSH_SQL = "UPDATE tasks t"
+        + " SET completed = v.completed, version = t.version + 1, updated_at = ?"
+        + " FROM unnest(?::bigint[], ?::boolean[]) AS v(id, completed)"
+        + " WHERE t.id = v.id AND t.completed <> v.completed"
+        + " RETURNING t.id, t.title, t.description, t.completed, t.version, t.updated_at";
+
+    // Upper bound for the number of tasks in one UPDATE
+    static final int FLUSH_BATCH_SIZE = 1000;
+
+    private final Map<Long, Boolean> pending = new ConcurrentHashMap<>();
+    // The number of pending tasks, a slot is reserved before a task is added
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache taskCache;
+    private final TaskEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int maxPending;
+    private final Counter flushedCounter;
+    private volatile boolean closed;
+
+    public TaskWriteBehindBuffer(
+            JdbcTemplate jdbcTemplate,
+            CacheManager cacheManager,
+            MeterRegistry meterRegistry,
+            TaskEventPublisher eventPublisher,
+            @Value("${tasks.write-behind.enabled:false}") boolean enabled,
+            @Value("${tasks.write-behind.max-pending:10000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskCache = cacheManager.getCache("tasks");
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.flushedCounter = Counter.builder("tasks.write_behind.flushed")
+            .description("Completion toggles written by the write-behind buffer")
+            .register(meterRegistry);
+        Gauge.builder("tasks.write_behind.pending", pending, Map::size)
+            .description("Completion toggles waiting to be written")
+            .register(meterRegistry);
+    }
+
+    /*
+     * Accepts a completion toggle to be written later
+     *
+     * @param id            The id of an existing Task
+     * @param completed     The new completed flag
+     * @return true if the toggle was buffered, false if the caller has to write it itself
+     */
+    public boolean offer(long id, boolean completed) {
+        if (!enabled || closed) {
+            return false;
+        }
+        // A task that is already pending doesn't take more room, a new one only gets in with a free slot,
+        // so concurrent offers can't grow the buffer past maxPending
+        boolean[] accepted = {true};
+        pending.compute(id, (key, previous) -> {
+            if (previous == null && pendingCount.incrementAndGet() > maxPending) {
+                pendingCount.decrementAndGet();
+                accepted[0] = false;
+                return null;
+            }
+            return completed;
+        });
+        return accepted[0];
+    }
+
+    /*
+     * @return the completed flag still waiting to be written for this Task, so reads see their own writes
+     */
+    public Optional<Boolean> pending(long id) {
+        return Optional.ofNullable(pending.get(id));
+    }
+
+    /*
+     * Writes the pending toggle of one Task right away, if there is one
+     * Called before a synchronous write to the same Task so both are applied in order
+     */
+    public void flush(long id) {
+        Boolean completed = pending.get(id);
+        if (completed != null) {
+            write(List.of(Map.entry(id, completed)));
+        }
+    }
+
+    /*
+     * Writes every pending toggle, in batches of FLUSH_BATCH_SIZE
+     */
+    @Scheduled(fixedDelayString = "${tasks.write-behind.flush-interval:200ms}")
+    public synchronized void flushAll() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Boolean>> batch = new ArrayList<>(Math.min(pending.size(), FLUSH_BATCH_SIZE));
+        for (Map.Entry<Long, Boolean> entry : pending.entrySet()) {
+            batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            if (batch.size() == FLUSH_BATCH_SIZE) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        closed = true;
+        flushAll();
+        if (!pending.isEmpty()) {
+            log.warn("{} completion toggles could not be written on shutdown", pending.size());
+        }
+    }
+
+    private void write(List<Map.Entry<Long, Boolean>> batch) {
+        long[] ids = new long[batch.size()];
+        boolean[] values = new boolean[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            ids[i] = batch.get(i).getKey();
+            values[i] = batch.get(i).getValue();
+        }
+
+        List<Task> changed;
+        try {
+            changed = jdbcTemplate.query(FLUSH_SQL, TaskWriteBehindBuffer::toTask,
+                OffsetDateTime.now(ZoneOffset.UTC), ids, values);
+        } catch (RuntimeException ex) {
+            // Stay pending and retry with the next flush
+            log.warn("Writing {} completion toggles failed", batch.size(), ex);
+            return;
+        }
+
+        // Evict before dropping the pending value, so a read in between never caches the old flag
+        for (Map.Entry<Long, Boolean> entry : batch) {
+            if (taskCache != null) {
+                taskCache.evict(entry.getKey());
+            }
+            // Keeps a newer toggle which arrived during the write
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                pendingCount.decrementAndGet();
+            }
+        }
+        // A lookup which read a row before the UPDATE committed may have cached the old flag after the
+        // eviction, the written rows replace it. Rows which already had the flag were not changed
+        List<TaskEvent> events = new ArrayList<>(changed.size());
+        for (Task task : changed) {
+            if (taskCache != null) {
+                taskCache.put(task.getId(), task);
+            }
+            events.add(TaskEvent.completed(task));
+        }
+        flushedCounter.increment(batch.size());
+        eventPublisher.publish(events);
+    }
+
+    private static Task toTask(ResultSet row, int rowNum) throws SQLException {
+        Task task = new Task(row.getString("title"), row.getString("description"));
+        task.setId(row.getLong("id"));
+        task.setCompleted(row.getBoolean("completed"));
+        task.setVersion(row.getLong("version"));
+        task.setUpdatedAt(row.getObject("updated_at", OffsetDateTime.class).toInstant());
+        return task;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.demo.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Bloom filter of Task titles: mightContain never answers false for an added title, and answers true
+ * for an absent one with about the configured false positive rate
+ *
+ * Its size only depends on the expected number of titles, not on their length:
+ * -n * ln(p) / ln(2)^2 bits, e.g. 9.6 bits (1.2 bytes) per title at 1%
+ * Titles can be added concurrently, they can't be removed
+ */
+class TitleBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /*
+     * @param expectedTitles    The number of titles the false positive rate is meant for
+     * @param falsePositiveRate The share of absent titles mightContain answers true for, e.g. 0.01
+     */
+    TitleBloomFilter(long expectedTitles, double falsePositiveRate) {
+        long n = Math.max(1, expectedTitles);
+        long wanted = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (wanted + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    void add(String title) {
+        long hash = hash(title);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((bits.get(word) & mask) == 0) {
+                bits.getAndAccumulate(word, mask, (current, set) -> current | set);
+            }
+        }
+    }
+
+    boolean mightContain(String title) {
+        long hash = hash(title);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getByteSize() {
+        return bitCount / 8;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars, the same title always sets the same bits
+    private static long hash(String title) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < title.length(); i++) {
+            hash ^= title.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    // MurmurHash3 finalizer, spreads the FNV hash over all 64 bits
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
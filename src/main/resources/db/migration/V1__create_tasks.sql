@@ -0,0 +1,19 @@
+-- Tasks table, as it was created by Hibernate before the schema was migrated with Flyway
+-- Idempotent so databases created by ddl-auto=update can be migrated in place
+
+CREATE SEQUENCE IF NOT EXISTS tasks_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS tasks (
+    id          bigint       NOT NULL,
+    title       varchar(255),
+    description varchar(255),
+    completed   boolean      NOT NULL DEFAULT false,
+    version     bigint       NOT NULL DEFAULT 0,
+    CONSTRAINT tasks_pkey PRIMARY KEY (id),
+    CONSTRAINT tasks_title_key UNIQUE (title)
+);
+
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+
+-- Move the sequence past the ids handed out by the former IDENTITY column
+SELECT setval('tasks_seq', GREATEST((SELECT COALESCE(MAX(id), 1) FROM tasks), (SELECT last_value FROM tasks_seq)));
@@ -0,0 +1,12 @@
+-- Indexes behind the filters of GET /tasks (see TaskSearchRepositoryImpl)
+-- The index expressions must stay identical to the ones used in the queries
+
+-- completed=false: only the incomplete tasks, in keyset (id) order
+CREATE INDEX IF NOT EXISTS tasks_incomplete_id_idx ON tasks (id) WHERE completed = false;
+
+-- titlePrefix=: LIKE 'prefix%' independent of the database collation
+CREATE INDEX IF NOT EXISTS tasks_title_pattern_idx ON tasks (title text_pattern_ops);
+
+-- q=: full-text search on the description
+CREATE INDEX IF NOT EXISTS tasks_description_fts_idx
+    ON tasks USING gin (to_tsvector('english', coalesce(description, '')));
@@ -0,0 +1,25 @@
+-- Brings databases adopted from ddl-auto=update in line with the ones created by V1
+
+-- The ids come from tasks_seq, the former IDENTITY column is no longer used
+ALTER TABLE tasks ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+-- Hibernate created the unique constraint on title under generated names, sometimes twice,
+-- and every copy is one more index to maintain on each insert. Keep only tasks_title_key
+DO $$
+DECLARE
+    duplicate text;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint
+                   WHERE conrelid = 'tasks'::regclass AND conname = 'tasks_title_key') THEN
+        ALTER TABLE tasks ADD CONSTRAINT tasks_title_key UNIQUE (title);
+    END IF;
+
+    FOR duplicate IN
+        SELECT c.conname FROM pg_constraint c
+        JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attname = 'title'
+        WHERE c.conrelid = 'tasks'::regclass AND c.contype = 'u'
+          AND c.conkey = ARRAY[a.attnum] AND c.conname <> 'tasks_title_key'
+    LOOP
+        EXECUTE format('ALTER TABLE tasks DROP CONSTRAINT %I', duplicate);
+    END LOOP;
+END $$;
@@ -0,0 +1,6 @@
+-- Last-Modified of each task, written by the application on every insert and update
+-- Existing rows start at the time of this migration
+ALTER TABLE tasks ADD COLUMN updated_at timestamp(6) with time zone NOT NULL DEFAULT now();
+
+-- Deliberately not indexed: the column changes on every update and an index on it would rule out
+-- HOT updates, while the collection ETag needs one pass over the table for count(*) anyway
@@ -0,0 +1,3 @@
+-- Ids of the change events sent with NOTIFY task_events, shared by every application instance
+-- so a client can resume GET /tasks/stream with Last-Event-ID on any of them
+CREATE SEQUENCE task_events_seq;
@@ -0,0 +1,67 @@
+-- Number of tasks and completed tasks for GET /tasks/stats, kept up to date by triggers on tasks
+-- in the writing transaction, whichever path writes: the API, the write-behind flush, COPY imports or plain SQL
+--
+-- The counts are spread over 32 slots, each transaction adds to the slot of its backend, so concurrent
+-- writers rarely wait for each other's row lock. The totals are the sums over the slots; a slot on
+-- its own may go negative when a task is deleted by another backend than the one which created it
+CREATE TABLE task_stats (
+    slot smallint PRIMARY KEY,
+    total bigint NOT NULL DEFAULT 0,
+    completed bigint NOT NULL DEFAULT 0
+);
+
+-- Statement level with transition tables: one counter update per statement, not per row,
+-- so a batch insert or an import of a million rows costs a single update
+CREATE FUNCTION task_stats_add() RETURNS trigger LANGUAGE plpgsql AS $$
+DECLARE
+    total_delta bigint := 0;
+    completed_delta bigint := 0;
+    old_total bigint;
+    old_completed bigint;
+BEGIN
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        SELECT count(*), count(*) FILTER (WHERE completed) INTO total_delta, completed_delta FROM new_tasks;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        SELECT count(*), count(*) FILTER (WHERE completed) INTO old_total, old_completed FROM old_tasks;
+        total_delta := total_delta - old_total;
+        completed_delta := completed_delta - old_completed;
+    END IF;
+    -- Most updates don't change the completed flag, they leave the counters alone
+    IF total_delta <> 0 OR completed_delta <> 0 THEN
+        UPDATE task_stats
+        SET total = total + total_delta, completed = completed + completed_delta
+        WHERE slot = pg_backend_pid() % 32;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+CREATE FUNCTION task_stats_reset() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    UPDATE task_stats SET total = 0, completed = 0;
+    RETURN NULL;
+END;
+$$;
+
+-- Creating the triggers locks out writers until the counts below are committed, no write is missed or counted twice
+CREATE TRIGGER task_stats_insert AFTER INSERT ON tasks
+    REFERENCING NEW TABLE AS new_tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_stats_add();
+
+CREATE TRIGGER task_stats_update AFTER UPDATE ON tasks
+    REFERENCING OLD TABLE AS old_tasks NEW TABLE AS new_tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_stats_add();
+
+CREATE TRIGGER task_stats_delete AFTER DELETE ON tasks
+    REFERENCING OLD TABLE AS old_tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_stats_add();
+
+CREATE TRIGGER task_stats_truncate AFTER TRUNCATE ON tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_stats_reset();
+
+INSERT INTO task_stats (slot) SELECT generate_series(0, 31);
+
+UPDATE task_stats
+SET (total, completed) = (SELECT count(*), count(*) FILTER (WHERE completed) FROM tasks)
+WHERE slot = 0;
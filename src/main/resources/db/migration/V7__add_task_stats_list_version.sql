@@ -0,0 +1,59 @@
+-- Validators of the full task list for GET /tasks, kept in the task_stats slots next to the counts
+-- so a conditional list request reads 32 rows instead of aggregating the whole table
+--
+-- version_sum follows the sum of all task versions. last_modified moves to the statement time, or to a
+-- newer updated_at written, with every statement which touches a row, and never goes backwards
+ALTER TABLE task_stats
+    ADD COLUMN version_sum bigint NOT NULL DEFAULT 0,
+    ADD COLUMN last_modified timestamptz;
+
+CREATE OR REPLACE FUNCTION task_stats_add() RETURNS trigger LANGUAGE plpgsql AS $$
+DECLARE
+    total_delta bigint := 0;
+    completed_delta bigint := 0;
+    version_delta bigint := 0;
+    modified timestamptz;
+    old_total bigint;
+    old_completed bigint;
+    old_versions bigint;
+    touched bigint := 0;
+BEGIN
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        SELECT count(*), count(*) FILTER (WHERE completed), coalesce(sum(version), 0), max(updated_at)
+        INTO total_delta, completed_delta, version_delta, modified FROM new_tasks;
+        touched := total_delta;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        SELECT count(*), count(*) FILTER (WHERE completed), coalesce(sum(version), 0)
+        INTO old_total, old_completed, old_versions FROM old_tasks;
+        total_delta := total_delta - old_total;
+        completed_delta := completed_delta - old_completed;
+        version_delta := version_delta - old_versions;
+        touched := greatest(touched, old_total);
+    END IF;
+    -- Every statement which touched a row changes the list, statements which matched nothing leave it alone
+    IF touched > 0 THEN
+        UPDATE task_stats
+        SET total = total + total_delta,
+            completed = completed + completed_delta,
+            version_sum = version_sum + version_delta,
+            last_modified = greatest(last_modified, modified, statement_timestamp())
+        WHERE slot = pg_backend_pid() % 32;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+CREATE OR REPLACE FUNCTION task_stats_reset() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    UPDATE task_stats SET total = 0, completed = 0, version_sum = 0, last_modified = statement_timestamp();
+    RETURN NULL;
+END;
+$$;
+
+-- Locks out writers like V6 did, the sums below include every committed write and no later one
+LOCK TABLE tasks IN SHARE MODE;
+
+UPDATE task_stats
+SET (version_sum, last_modified) = (SELECT coalesce(sum(version), 0), max(updated_at) FROM tasks)
+WHERE slot = 0;
@@ -0,0 +1,261 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.TaskBatchResult;
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.dto.TaskListVersion;
+import com.example.demo.dto.TaskPatch;
+import com.example.demo.dto.TaskStats;
+import com.example.demo.model.Task;
+import com.example.demo.repository.ReactiveTaskRepository;
+import com.example.demo.service.ReactiveTaskEventPublisher;
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * This test class checks that the reactive Task API answers like TaskController
+ */
+public class ReactiveTaskControllerTest extends TaskControllerTestBase {
+
+  @Mock
+  private ReactiveTaskRepository taskRepository;
+
+  @Mock
+  private ReactiveTaskEventPublisher reactiveEventPublisher;
+
+  @InjectMocks
+  private ReactiveTaskController taskController;
+
+  @BeforeEach
+  public void setUp() {
+    MockitoAnnotations.openMocks(this);
+    when(reactiveEventPublisher.publish(any(TaskEvent.class))).thenReturn(Mono.empty());
+    when(reactiveEventPublisher.publish(anyList())).thenReturn(Mono.empty());
+  }
+
+  // The title is taken: the database rejects the INSERT with a unique_violation
+  private DataIntegrityViolationException duplicateTitle() {
+    return new DataIntegrityViolationException("duplicate key",
+        new R2dbcDataIntegrityViolationException("duplicate key value violates unique constraint", "23505"));
+  }
+
+  private Task storedTask(long id, String title, long version) {
+    Task task = createTestTask(title, title + " Description");
+    task.setId(id);
+    task.setVersion(version);
+    task.setUpdatedAt(Instant.parse("2025-01-01T10:00:00Z"));
+    return task;
+  }
+
+  /*
+   * Test: A new Task is inserted, answered with 201 and announced
+   */
+  @Test
+  public void testCreateTask_success() {
+    Task saved = storedTask(1L, "Task 1", 0L);
+    when(taskRepository.insert(any(Task.class))).thenReturn(Mono.just(saved));
+
+    ResponseEntity<?> response = taskController.createTask(createTestTask("Task 1", "Task 1 Description")).block();
+
+    assertEquals(HttpStatus.CREATED, response.getStatusCode());
+    assertSame(saved, response.getBody());
+    verify(reactiveEventPublisher).publish(argThat((TaskEvent event) ->
+        event.getType().equals("created") && event.getId() == 1L));
+  }
+
+  /*
+   * Test: Missing fields are rejected before anything is sent to the database
+   */
+  @Test
+  public void testCreateTask_validation() {
+    ResponseEntity<?> response = taskController.createTask(createTestTask(" ", null)).block();
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(Map.of("title", "Title is required", "description", "Description is required"),
+        extractErrors(response));
+    verifyNoInteractions(taskRepository);
+  }
+
+  /*
+   * Test: A taken title gets the same 400 as from TaskController
+   */
+  @Test
+  public void testCreateTask_duplicateTitle() {
+    when(taskRepository.insert(any(Task.class))).thenReturn(Mono.error(duplicateTitle()));
+
+    ResponseEntity<?> response = taskController.createTask(createTestTask("Task 1", "Task 1 Description")).block();
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals("Task Title already exists.", extractErrors(response).get("error"));
+    verify(reactiveEventPublisher, never()).publish(any(TaskEvent.class));
+  }
+
+  /*
+   * Test: A batch inserts only the valid Tasks with new titles and answers 207
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCreateTasks_partial() {
+    when(taskRepository.findExistingTitles(any())).thenReturn(Flux.just("Taken"));
+    when(taskRepository.insertAll(anyList())).thenReturn(Flux.just(storedTask(5L, "New", 0L)));
+
+    ResponseEntity<?> response = taskController.createTasks(List.of(
+        createTestTask("New", "New Description"),
+        createTestTask("Taken", "Taken Description"),
+        createTestTask("", "No title"))).block();
+
+    assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+    List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+    assertEquals(List.of(201, 400, 400), results.stream().map(TaskBatchResult::getStatus).toList());
+    verify(taskRepository).insertAll(argThat(tasks -> tasks.size() == 1 && tasks.get(0).getTitle().equals("New")));
+  }
+
+  /*
+   * Test: The full list carries the weak ETag and Last-Modified of TaskController.getAllTasks
+   */
+  @Test
+  public void testGetAllTasks_validators() {
+    when(taskRepository.findListVersion()).thenReturn(
+        Mono.just(new TaskListVersion(2L, 5L, Instant.parse("2025-01-01T10:00:00.123456Z"))));
+    when(taskRepository.findAllOrderedById()).thenReturn(Flux.empty());
+
+    ResponseEntity<?> response = taskController.getAllTasks("application/x-ndjson", null).block();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("W/\"2-5-1735725600123456-ndjson\"", response.getHeaders().getETag());
+    assertEquals(Instant.parse("2025-01-01T10:00:00Z").toEpochMilli(), response.getHeaders().getLastModified());
+    assertInstanceOf(Flux.class, response.getBody());
+  }
+
+  /*
+   * Test: An unknown field is rejected without reading the Tasks
+   */
+  @Test
+  public void testGetAllTasks_unknownField() {
+    ResponseEntity<?> response = taskController.getAllTasks(null, "id,secret").block();
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    verifyNoInteractions(taskRepository);
+  }
+
+  /*
+   * Test: A missing Task is a 404 with the message of TaskController
+   */
+  @Test
+  public void testGetTaskById_notFound() {
+    when(taskRepository.findById(1L)).thenReturn(Mono.empty());
+
+    ResponseEntity<?> response = taskController.getTaskById(1L).block();
+
+    assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    assertEquals("Task with ID: 1 couldn't be found. Task doesn't exist.", extractErrors(response).get("error"));
+  }
+
+  /*
+   * Test: An update which lost the race against another one answers 409
+   */
+  @Test
+  public void testUpdateTask_conflict() {
+    when(taskRepository.findById(1L)).thenReturn(Mono.just(storedTask(1L, "Task 1", 3L)));
+    when(taskRepository.update(any(Task.class), anyLong())).thenReturn(Mono.empty());
+
+    ResponseEntity<?> response = taskController.updateTask(1L, Map.of("completed", true)).block();
+
+    assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    verify(taskRepository).update(argThat(Task::isCompleted), eq(3L));
+  }
+
+  /*
+   * Test: A patch with a stale If-Match version answers 412 when the Task still exists
+   */
+  @Test
+  public void testPatchTask_versionMismatch() {
+    TaskPatch patch = new TaskPatch();
+    patch.setCompleted(true);
+    when(taskRepository.patch(1L, patch, 2L)).thenReturn(Mono.empty());
+    when(taskRepository.existsById(1L)).thenReturn(Mono.just(true));
+
+    ResponseEntity<?> response = taskController.patchTask(1L, patch, "\"2\"").block();
+
+    assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+  }
+
+  /*
+   * Test: A weak or unparseable If-Match answers 412 without patching any version
+   */
+  @Test
+  public void testPatchTask_unmatchableIfMatch() {
+    TaskPatch patch = new TaskPatch();
+    patch.setCompleted(true);
+
+    assertEquals(HttpStatus.PRECONDITION_FAILED, taskController.patchTask(1L, patch, "W/\"2\"").block().getStatusCode());
+    assertEquals(HttpStatus.PRECONDITION_FAILED, taskController.patchTask(1L, patch, "\"2\", \"3\"").block().getStatusCode());
+    assertEquals(HttpStatus.PRECONDITION_FAILED, taskController.patchTask(1L, patch, "abc").block().getStatusCode());
+    verifyNoInteractions(taskRepository);
+  }
+
+  /*
+   * Test: A multi-get reads all ids with one query and answers them in request order, 207 if one is missing
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGetTasksByIds() {
+    when(taskRepository.findAllByIds(Set.of(1L, 2L, 3L)))
+        .thenReturn(Flux.just(storedTask(3L, "Task 3", 0L), storedTask(1L, "Task 1", 0L)));
+
+    ResponseEntity<?> response = taskController.getTasksByIds("3,2,1,3").block();
+
+    assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+    List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+    assertEquals(List.of(200, 404, 200, 200), results.stream().map(TaskBatchResult::getStatus).toList());
+    assertEquals(3L, results.get(0).getTask().getId());
+    assertEquals(1L, results.get(2).getTask().getId());
+    verify(taskRepository, times(1)).findAllByIds(any());
+
+    assertEquals(HttpStatus.BAD_REQUEST, taskController.getTasksByIds("1,x").block().getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, taskController.lookupTasks(List.of()).block().getStatusCode());
+  }
+
+  /*
+   * Test: The stats are read from the counters
+   */
+  @Test
+  public void testGetTaskStats() {
+    when(taskRepository.findStats()).thenReturn(Mono.just(new TaskStats(5, 2)));
+
+    ResponseEntity<TaskStats> response = taskController.getTaskStats().block();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(3, response.getBody().getPending());
+  }
+
+  /*
+   * Test: Bulk deletes need exactly one filter, like in TaskController
+   */
+  @Test
+  public void testDeleteTasks_requiresOneFilter() {
+    assertEquals(HttpStatus.BAD_REQUEST, taskController.deleteTasks(null, null).block().getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, taskController.deleteTasks(List.of(1L), true).block().getStatusCode());
+    verifyNoInteractions(taskRepository);
+  }
+}
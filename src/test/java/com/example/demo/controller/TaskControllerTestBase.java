@@ -1,6 +1,12 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.Task;
+import com.example.demo.service.TaskCopyService;
+import com.example.demo.service.TaskEventBroadcaster;
+import com.example.demo.service.TaskEventPublisher;
+import com.example.demo.service.TaskTitleIndex;
+import com.example.demo.service.TaskWriteBehindBuffer;
+import org.mockito.Mock;
 import org.springframework.http.ResponseEntity;
 
 import java.util.Map;
@@ -10,6 +16,25 @@ import java.util.Map;
  */
 public abstract class TaskControllerTestBase {
 
+    // Injected into the controller of every test class, a plain mock behaves like a disabled buffer
+    // (offer() returns false, nothing is pending)
+    @Mock
+    protected TaskWriteBehindBuffer writeBehindBuffer;
+
+    // Change events sent by the write paths and the subscribers of GET /tasks/stream
+    @Mock
+    protected TaskEventPublisher eventPublisher;
+
+    @Mock
+    protected TaskEventBroadcaster eventBroadcaster;
+
+    // A plain mock behaves like an index which isn't loaded yet, every title is checked against the repository
+    @Mock
+    protected TaskTitleIndex titleIndex;
+
+    @Mock
+    protected TaskCopyService taskCopyService;
+
     /**
      * Helper method to create a Task object
      * 
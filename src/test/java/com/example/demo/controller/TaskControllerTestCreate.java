@@ -1,5 +1,7 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.TaskBatchResult;
+import com.example.demo.dto.TaskEvent;
 import com.example.demo.model.Task;
 import com.example.demo.repository.TaskRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,9 +9,11 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.sql.SQLException;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -46,13 +50,9 @@ public class TaskControllerTestCreate extends TaskControllerTestBase {
         // Create a new Task with a valid title and description
         Task task = createTestTask("Test Title", "Test Description");
 
-        // Simulate that no task with the same title exists 
-        when(taskRepository.existsByTitle(task.getTitle())).thenReturn(false);
-        System.out.println("existsByTitle: returning false for title '" + task.getTitle() + "'");
-
         // Simulate that saving the task returns the same task object
-        when(taskRepository.save(task)).thenReturn(task);
-        System.out.println("Save: returning the task");
+        when(taskRepository.saveAndFlush(task)).thenReturn(task);
+        System.out.println("saveAndFlush: returning the task");
 
         // call the controllers createTask method
         ResponseEntity<?> response = taskController.createTask(task);
@@ -63,6 +63,12 @@ public class TaskControllerTestCreate extends TaskControllerTestBase {
 
         // Check that the response body (the saved task) is the same as our task
         assertEquals(task, response.getBody());
+
+        // Verify that no separate SELECT is issued to check the title
+        verify(taskRepository, never()).existsByTitle(anyString());
+
+        // Subscribers of GET /tasks/stream hear about the new task
+        verify(eventPublisher).publish(argThat((TaskEvent event) -> event.getType().equals("created")));
         System.out.println("testCreateTask_Success completed successfully");
     }
 
@@ -127,9 +133,10 @@ public class TaskControllerTestCreate extends TaskControllerTestBase {
         // Create a Task with a valid title and description
         Task task = createTestTask("Test Title", "Test Description");
 
-        // Simulate that a task with the same title already exists by returning true.
-        when(taskRepository.existsByTitle(task.getTitle())).thenReturn(true);
-        System.out.println("existsByTitle: returning true for title '" + task.getTitle() + "'");
+        // Simulate that the INSERT is rejected by the unique constraint on the title
+        when(taskRepository.saveAndFlush(task)).thenThrow(new DataIntegrityViolationException(
+            "duplicate key", new SQLException("duplicate key value violates unique constraint", "23505")));
+        System.out.println("saveAndFlush: throwing a unique violation for title '" + task.getTitle() + "'");
 
         // Call the controller's createTask method
         ResponseEntity<?> response = taskController.createTask(task);
@@ -147,6 +154,26 @@ public class TaskControllerTestCreate extends TaskControllerTestBase {
         System.out.println("testCreateTask_titleExists completed successfully");
     }
 
+    /*
+     * Test: Other integrity errors are not reported as a duplicate title
+     */
+    @Test
+    public void testCreateTask_otherIntegrityError(){
+        System.out.println("----------Starting testCreateTask_otherIntegrityError----------");
+
+        // Create a Task with a valid title and description
+        Task task = createTestTask("Test Title", "Test Description");
+
+        // Simulate a not-null violation instead of a unique violation
+        DataIntegrityViolationException notNull = new DataIntegrityViolationException(
+            "not null", new SQLException("null value in column", "23502"));
+        when(taskRepository.saveAndFlush(task)).thenThrow(notNull);
+
+        // The exception should be passed on instead of being turned into a 400
+        assertThrows(DataIntegrityViolationException.class, () -> taskController.createTask(task));
+        System.out.println("testCreateTask_otherIntegrityError completed successfully");
+    }
+
     /*
      * Test: Creating a task with both a missing title and description
      */
@@ -172,4 +199,188 @@ public class TaskControllerTestCreate extends TaskControllerTestBase {
         assertTrue(errors.containsKey("description"), "Expected errors to contain key 'description', but got: " + errors);
         System.out.println("testCreateTask_missingTitleAndDescription completed successfully");
     }
+
+    /*
+     * Test: Successfully create a batch of tasks
+     */
+    @Test
+    public void testCreateTasks_batchSuccess(){
+        System.out.println("----------Starting testCreateTasks_batchSuccess----------");
+
+        // Create two valid tasks
+        List<Task> tasks = List.of(
+            createTestTask("Title 1", "Description 1"),
+            createTestTask("Title 2", "Description 2"));
+
+        // Simulate that none of the titles exist and that saveAll returns the tasks
+        when(taskRepository.findExistingTitles(anyCollection())).thenReturn(List.of());
+        when(taskRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Call the controller's createTasks method
+        ResponseEntity<?> response = taskController.createTasks(tasks);
+        System.out.println("Response received: " + response);
+
+        // Check that the response status is 201 CREATED
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+
+        // Every item should be reported as created, in request order
+        List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+        assertEquals(2, results.size());
+        for(int i = 0; i < results.size(); i++){
+            assertEquals(i, results.get(i).getIndex());
+            assertEquals(201, results.get(i).getStatus());
+            assertEquals(tasks.get(i), results.get(i).getTask());
+        }
+
+        // Verify that the titles were checked with one query and saved with one call
+        verify(taskRepository, times(1)).findExistingTitles(anyCollection());
+        verify(taskRepository, never()).existsByTitle(anyString());
+        verify(taskRepository, times(1)).saveAll(anyList());
+        System.out.println("testCreateTasks_batchSuccess completed successfully");
+    }
+
+    /*
+     * Test: Invalid and duplicate items are rejected individually while the others are created
+     */
+    @Test
+    public void testCreateTasks_batchPartial(){
+        System.out.println("----------Starting testCreateTasks_batchPartial----------");
+
+        // A valid task, one without description, one repeating a title of the batch and one with a taken title
+        List<Task> tasks = List.of(
+            createTestTask("Title 1", "Description 1"),
+            createTestTask("Title 2", ""),
+            createTestTask("Title 1", "Description 3"),
+            createTestTask("Taken Title", "Description 4"));
+
+        // Simulate that "Taken Title" already exists in the database
+        when(taskRepository.findExistingTitles(anyCollection())).thenReturn(List.of("Taken Title"));
+        when(taskRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Call the controller's createTasks method
+        ResponseEntity<?> response = taskController.createTasks(tasks);
+        System.out.println("Response received: " + response);
+
+        // Check that the response status is 207 MULTI_STATUS
+        assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+
+        List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals(400, results.get(1).getStatus());
+        assertTrue(results.get(1).getErrors().containsKey("description"));
+        assertEquals(400, results.get(2).getStatus());
+        assertEquals("Task Title already exists.", results.get(2).getErrors().get("error"));
+        assertEquals(400, results.get(3).getStatus());
+        assertEquals("Task Title already exists.", results.get(3).getErrors().get("error"));
+
+        // Only the first task should have been saved
+        verify(taskRepository).saveAll(List.of(tasks.get(0)));
+        System.out.println("testCreateTasks_batchPartial completed successfully");
+    }
+
+    /*
+     * Test: Titles the index reports absent are not queried, and checked after all when the insert hits a taken one
+     */
+    @Test
+    public void testCreateTasks_titleIndexMiss(){
+        System.out.println("----------Starting testCreateTasks_titleIndexMiss----------");
+
+        List<Task> tasks = List.of(
+            createTestTask("Title 1", "Description 1"),
+            createTestTask("Taken Title", "Description 2"));
+
+        // The index doesn't know "Taken Title" yet, e.g. it was created by another instance
+        when(titleIndex.isAbsent(anyString())).thenReturn(true);
+        when(taskRepository.findExistingTitles(anyCollection())).thenReturn(List.of("Taken Title"));
+        when(taskRepository.saveAll(anyList()))
+            .thenThrow(new DataIntegrityViolationException("could not execute batch", new RuntimeException(
+                "duplicate key", new SQLException("duplicate key value violates unique constraint", "23505"))))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ResponseEntity<?> response = taskController.createTasks(tasks);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+        List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals(400, results.get(1).getStatus());
+
+        // Only the retry queried the titles, and the index gets rebuilt
+        verify(taskRepository, times(1)).findExistingTitles(Set.of("Title 1", "Taken Title"));
+        verify(taskRepository).saveAll(List.of(tasks.get(0)));
+        verify(titleIndex).markStale();
+        verify(titleIndex).add("Title 1");
+        System.out.println("testCreateTasks_titleIndexMiss completed successfully");
+    }
+
+    /*
+     * Test: A title taken concurrently after the check is rejected on its own, the rest of the batch is retried
+     */
+    @Test
+    public void testCreateTasks_titleTakenConcurrently(){
+        System.out.println("----------Starting testCreateTasks_titleTakenConcurrently----------");
+
+        List<Task> tasks = List.of(
+            createTestTask("Title 1", "Description 1"),
+            createTestTask("Raced Title", "Description 2"));
+
+        // Both titles are free when checked, "Raced Title" is inserted by another request before this insert
+        when(taskRepository.findExistingTitles(anyCollection()))
+            .thenReturn(List.of())
+            .thenReturn(List.of("Raced Title"));
+        when(taskRepository.saveAll(anyList()))
+            .thenThrow(new DataIntegrityViolationException("could not execute batch", new RuntimeException(
+                "duplicate key", new SQLException("duplicate key value violates unique constraint", "23505"))))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ResponseEntity<?> response = taskController.createTasks(tasks);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+        List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals(400, results.get(1).getStatus());
+        assertEquals(Map.of("error", "Task Title already exists."), results.get(1).getErrors());
+
+        verify(taskRepository, times(2)).findExistingTitles(Set.of("Title 1", "Raced Title"));
+        verify(taskRepository).saveAll(List.of(tasks.get(0)));
+        verify(titleIndex, never()).markStale();
+        System.out.println("testCreateTasks_titleTakenConcurrently completed successfully");
+    }
+
+    /*
+     * Test: A batch whose titles keep being taken concurrently gives up with 409 after a few attempts
+     */
+    @Test
+    public void testCreateTasks_titlesKeepBeingTaken(){
+        System.out.println("----------Starting testCreateTasks_titlesKeepBeingTaken----------");
+
+        when(taskRepository.saveAll(anyList()))
+            .thenThrow(new DataIntegrityViolationException("could not execute batch", new RuntimeException(
+                "duplicate key", new SQLException("duplicate key value violates unique constraint", "23505"))));
+
+        ResponseEntity<?> response = taskController.createTasks(List.of(createTestTask("Title 1", "Description 1")));
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verify(taskRepository, times(TaskController.MAX_BATCH_ATTEMPTS)).saveAll(anyList());
+        System.out.println("testCreateTasks_titlesKeepBeingTaken completed successfully");
+    }
+
+    /*
+     * Test: An empty batch is rejected
+     */
+    @Test
+    public void testCreateTasks_emptyBatch(){
+        System.out.println("----------Starting testCreateTasks_emptyBatch----------");
+
+        // Call the controller's createTasks method with no tasks
+        ResponseEntity<?> response = taskController.createTasks(List.of());
+        System.out.println("Response received: " + response);
+
+        // Check that the response status is 400 BAD_REQUEST and nothing was saved
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(taskRepository, never()).saveAll(anyList());
+        System.out.println("testCreateTasks_emptyBatch completed successfully");
+    }
 }
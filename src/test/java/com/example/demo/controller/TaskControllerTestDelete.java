@@ -1,12 +1,14 @@
 package com.example.demo.controller;
 
 import com.example.demo.controller.TaskControllerTestBase;
+import com.example.demo.dto.TaskEvent;
 import com.example.demo.model.Task;
 import com.example.demo.repository.TaskRepository;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -15,8 +17,9 @@ import static org.mockito.Mockito.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 /*
  * This test class checks the "delete" functionality
@@ -50,7 +53,7 @@ public class TaskControllerTestDelete extends TaskControllerTestBase {
     Task task = createTestTask("Task 1", "Task 1 Description");
     task.setId(1L);
 
-    when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+    when(taskRepository.deleteTaskById(1L)).thenReturn(1);
 
     // Call the controller's deleteTask method with ID 1.
     ResponseEntity<?> response = taskController.deleteTask(1L);
@@ -69,8 +72,10 @@ public class TaskControllerTestDelete extends TaskControllerTestBase {
     assertEquals("Deleted Task with ID: 1", result.get("success"),
         "Expected success message 'Deleted Task with ID: 1' but got: " + result.get("success"));
     
-    // Verify that the repository's deleteById method was called with ID 1.
-    verify(taskRepository).deleteById(1L);
+    // Verify that the Task was deleted with a single statement and never loaded first
+    verify(taskRepository).deleteTaskById(1L);
+    verify(taskRepository, never()).findById(anyLong());
+    verify(eventPublisher).publish(argThat((TaskEvent event) -> event.getType().equals("deleted") && event.getId() == 1L));
     System.out.println("testDeleteTask_success completed successfully");
   }
 
@@ -85,7 +90,8 @@ public class TaskControllerTestDelete extends TaskControllerTestBase {
     Task task = createTestTask("Task 1", "Task 1 Description");
     task.setId(1L);
 
-    when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+    when(taskRepository.deleteTaskById(1L)).thenReturn(1);
+    when(taskRepository.deleteTaskById(2L)).thenReturn(0);
 
     // Call the controller's deleteTask method with ID 2
     ResponseEntity<?> response = taskController.deleteTask(2L);
@@ -104,6 +110,75 @@ public class TaskControllerTestDelete extends TaskControllerTestBase {
     String expectedError = "Task with ID: 2 couldn't be deleted. Task doesn't exist.";
     assertEquals(expectedError, result.get("error"),
         "Expected error message 'Couldn't find Task with ID: 2' but got: " + result.get("success"));
+    verifyNoInteractions(eventPublisher);
     System.out.println("testDeleteTaskById_notFound completed successfully");
   }
+
+  /*
+   * Test: Deleting several tasks by id runs one statement with the distinct ids and announces only the deleted ones
+   */
+  @Test
+  public void testDeleteTasksByIds_success(){
+    System.out.println("----------Starting testDeleteTasksByIds_success----------");
+
+    when(taskRepository.deleteAllByIds(any())).thenReturn(List.of(1L, 2L));
+
+    // Id 2 is given twice, id 3 doesn't exist
+    ResponseEntity<?> response = taskController.deleteTasks(List.of(1L, 2L, 2L, 3L), null);
+    System.out.println("Response received: " + response);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    Map<?, ?> result = (Map<?, ?>) response.getBody();
+    assertEquals(2, result.get("deleted"));
+    assertEquals("Deleted 2 Task(s).", result.get("success"));
+
+    ArgumentCaptor<Long[]> idsCaptor = ArgumentCaptor.forClass(Long[].class);
+    verify(taskRepository).deleteAllByIds(idsCaptor.capture());
+    assertEquals(Set.of(1L, 2L, 3L), Set.of(idsCaptor.getValue()));
+    verify(eventPublisher).publish(argThat((List<TaskEvent> events) ->
+        events.stream().map(TaskEvent::getId).toList().equals(List.of(1L, 2L))));
+    System.out.println("testDeleteTasksByIds_success completed successfully");
+  }
+
+  /*
+   * Test: Deleting all completed tasks runs one statement
+   */
+  @Test
+  public void testDeleteTasksByCompleted_success(){
+    System.out.println("----------Starting testDeleteTasksByCompleted_success----------");
+
+    when(taskRepository.deleteAllByCompleted(true)).thenReturn(5);
+
+    ResponseEntity<?> response = taskController.deleteTasks(null, true);
+    System.out.println("Response received: " + response);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(5, ((Map<?, ?>) response.getBody()).get("deleted"));
+    verify(taskRepository).deleteAllByCompleted(true);
+    // One event for all of them
+    verify(eventPublisher).publish(argThat((TaskEvent event) -> event.getId() == null && event.getCompleted()));
+    System.out.println("testDeleteTasksByCompleted_success completed successfully");
+  }
+
+  /*
+   * Test: A bulk delete without exactly one filter is rejected and deletes nothing
+   */
+  @Test
+  public void testDeleteTasks_missingOrAmbiguousFilter(){
+    System.out.println("----------Starting testDeleteTasks_missingOrAmbiguousFilter----------");
+
+    ResponseEntity<?> noFilter = taskController.deleteTasks(null, null);
+    ResponseEntity<?> bothFilters = taskController.deleteTasks(List.of(1L), true);
+    ResponseEntity<?> noIds = taskController.deleteTasks(List.of(), null);
+
+    assertEquals(HttpStatus.BAD_REQUEST, noFilter.getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, bothFilters.getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, noIds.getStatusCode());
+    assertTrue(extractErrors(noFilter).containsKey("error"));
+    assertTrue(extractErrors(noIds).containsKey("ids"));
+
+    verify(taskRepository, never()).deleteAllByIds(any());
+    verify(taskRepository, never()).deleteAllByCompleted(anyBoolean());
+    System.out.println("testDeleteTasks_missingOrAmbiguousFilter completed successfully");
+  }
 }
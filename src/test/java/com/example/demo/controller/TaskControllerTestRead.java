@@ -1,22 +1,44 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.TaskBatchResult;
+import com.example.demo.dto.TaskFilter;
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskListFormat;
+import com.example.demo.dto.TaskListVersion;
+import com.example.demo.dto.TaskPage;
+import com.example.demo.dto.TaskStats;
 import com.example.demo.model.Task;
 import com.example.demo.repository.TaskRepository;
+import com.example.demo.service.TaskStreamService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /*
  * This test class checks the "read" functionality
@@ -27,47 +49,253 @@ public class TaskControllerTestRead extends TaskControllerTestBase {
     @Mock
     private TaskRepository taskRepository;
 
+    // Mock of the service which streams all tasks to the response
+    @Mock
+    private TaskStreamService taskStreamService;
+
     // Creates an instance of TaskController and inject the mock TaskRepo into it
     // This means the controller will use the simulated repository instead of a real one
     @InjectMocks
     private TaskController taskController;
 
+    private static final Instant LIST_MODIFIED = Instant.parse("2025-01-01T10:00:00.123456Z");
+    private static final int DEFAULT_LIMIT = TaskController.DEFAULT_PAGE_SIZE;
+
+    // The current request, tests add conditional headers to it
+    private MockHttpServletRequest servletRequest;
+    private MockHttpServletResponse servletResponse;
+    private ServletWebRequest webRequest;
+
     // This method runs before each test (BeforeEach Annotation)
     @BeforeEach
     public void setUp() {
         // Initialize all fields
         MockitoAnnotations.openMocks(this);
+        servletRequest = new MockHttpServletRequest("GET", "/tasks");
+        servletResponse = new MockHttpServletResponse();
+        webRequest = new ServletWebRequest(servletRequest, servletResponse);
+        when(taskRepository.findListVersion()).thenReturn(new TaskListVersion(2, 5, LIST_MODIFIED));
     }
 
     /**
-     * Test: Successfully return a list of all tasks
+     * Test: Without paging parameters all tasks are streamed as a JSON array
      */
     @Test
-    public void testGetAllTasks() {
+    public void testGetAllTasks() throws Exception {
         System.out.println("----------Starting testGetAllTasks----------");
 
-        // Create a list of tasks to simulate repository data
-        List<Task> tasks = new ArrayList<>();
-        tasks.add(createTestTask("Title 1", "Description 1"));
-        tasks.add(createTestTask("Title 2", "Description 2"));
-        System.out.println("Created tasks list: " + tasks);
-
-        // Simulate to return our simulated list when findAll() is called.
-        when(taskRepository.findAll()).thenReturn(tasks);
+        // Call the controller's getAllTasks method without paging parameters
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(null, null, webRequest);
+        System.out.println("Response received: " + response);
 
-        // Call the controller's getAllTasks method
-        List<Task> result = taskController.getAllTasks();
-        System.out.println("Result from getAllTasks(): " + result);
+        // Check that the response has a status of 200 OK and a JSON content type
+        assertEquals(HttpStatus.OK, response.getStatusCode(), "Expected HTTP 200 OK");
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
 
-        // Verify that the returned list has the expected size (2 tasks).
-        assertEquals(2, result.size(), "Expected two tasks in the result list");
+        // The body streams the tasks, write it to verify the stream service is used
+        OutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(taskStreamService).writeTasks(out, TaskListFormat.JSON, null);
 
-        // Verify that the returned list exactly matches our simulated list.
-        assertEquals(tasks, result, "Expected tasks list to match the simulated list");
+        // Verify that findAll() is never used to load the whole table
+        verify(taskRepository, never()).findAll();
 
         System.out.println("testGetAllTasks completed successfully");
     }
 
+    /**
+     * Test: NDJSON is streamed when the client accepts it
+     */
+    @Test
+    public void testGetAllTasks_ndjson() throws Exception {
+        System.out.println("----------Starting testGetAllTasks_ndjson----------");
+
+        // Call the controller's getAllTasks method with an NDJSON Accept header
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(MediaType.APPLICATION_NDJSON_VALUE, null, webRequest);
+        System.out.println("Response received: " + response);
+
+        // Check that the response has an NDJSON content type
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+
+        // Verify that the stream service is asked for NDJSON
+        OutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(taskStreamService).writeTasks(out, TaskListFormat.NDJSON, null);
+
+        System.out.println("testGetAllTasks_ndjson completed successfully");
+    }
+
+    /**
+     * Test: Binary formats are negotiated from the Accept header, by quality
+     */
+    @Test
+    public void testGetAllTasks_smile() throws Exception {
+        System.out.println("----------Starting testGetAllTasks_smile----------");
+
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(
+            "application/json;q=0.5, application/x-jackson-smile", null, webRequest);
+        System.out.println("Response received: " + response);
+
+        assertEquals(TaskListFormat.SMILE.getMediaType(), response.getHeaders().getContentType());
+        assertEquals("W/\"2-5-1735725600123456-smile\"", servletResponse.getHeader(HttpHeaders.ETAG));
+
+        OutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(taskStreamService).writeTasks(out, TaskListFormat.SMILE, null);
+
+        System.out.println("testGetAllTasks_smile completed successfully");
+    }
+
+    /**
+     * Test: Only the selected fields are read, in the order of the Task properties
+     */
+    @Test
+    public void testGetAllTasks_fields() throws Exception {
+        System.out.println("----------Starting testGetAllTasks_fields----------");
+
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(null, "title, id,title", webRequest);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("W/\"2-5-1735725600123456.id.title\"", servletResponse.getHeader(HttpHeaders.ETAG));
+
+        OutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(taskStreamService).writeTasks(out, TaskListFormat.JSON, List.of(TaskField.ID, TaskField.TITLE));
+
+        System.out.println("testGetAllTasks_fields completed successfully");
+    }
+
+    /**
+     * Test: An unknown field is rejected before anything is read
+     */
+    @Test
+    public void testGetAllTasks_unknownField() throws Exception {
+        System.out.println("----------Starting testGetAllTasks_unknownField----------");
+
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(null, "id,secret", webRequest);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertTrue(out.toString().startsWith("{\"fields\":"), "Expected a fields error but got: " + out);
+        verifyNoInteractions(taskStreamService);
+        verify(taskRepository, never()).findListVersion();
+
+        System.out.println("testGetAllTasks_unknownField completed successfully");
+    }
+
+    /**
+     * Test: Return one keyset page and the cursor of the next page
+     */
+    @Test
+    public void testGetAllTasks_page() {
+        System.out.println("----------Starting testGetAllTasks_page----------");
+
+        // Create a page of two tasks following the cursor 10
+        Task first = createTestTask("Title 11", "Description 11");
+        first.setId(11L);
+        Task second = createTestTask("Title 12", "Description 12");
+        second.setId(12L);
+        List<Task> tasks = List.of(first, second);
+
+        // Simulate that more tasks follow this page
+        when(taskRepository.findByIdGreaterThanOrderByIdAsc(eq(10L), any()))
+            .thenReturn(new SliceImpl<>(tasks, PageRequest.ofSize(2), true));
+
+        // Call the controller's getTaskPage method with a cursor and a limit
+        ResponseEntity<?> response = taskController.getTaskPage(10L, 2, null, null, null);
+        System.out.println("Response received: " + response);
+
+        // Check that the response has a status of 200 OK
+        assertEquals(HttpStatus.OK, response.getStatusCode(), "Expected HTTP 200 OK");
+
+        // Verify the page content and that the next cursor is the id of the last task
+        TaskPage page = (TaskPage) response.getBody();
+        assertEquals(tasks, page.getTasks(), "Expected the page to contain the simulated tasks");
+        assertEquals(12L, page.getNextCursor(), "Expected the next cursor to be the last id of the page");
+
+        System.out.println("testGetAllTasks_page completed successfully");
+    }
+
+    /**
+     * Test: The last page has no next cursor
+     */
+    @Test
+    public void testGetAllTasks_lastPage() {
+        System.out.println("----------Starting testGetAllTasks_lastPage----------");
+
+        Task task = createTestTask("Title 1", "Description 1");
+        task.setId(1L);
+
+        // Simulate that no tasks follow this page
+        when(taskRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any()))
+            .thenReturn(new SliceImpl<>(List.of(task), PageRequest.ofSize(50), false));
+
+        // Call the controller's getTaskPage method with only a limit
+        ResponseEntity<?> response = taskController.getTaskPage(null, 50, null, null, null);
+        System.out.println("Response received: " + response);
+
+        // Verify that there is no next cursor
+        TaskPage page = (TaskPage) response.getBody();
+        assertNull(page.getNextCursor(), "Expected no next cursor on the last page");
+
+        System.out.println("testGetAllTasks_lastPage completed successfully");
+    }
+
+    /**
+     * Test: Filter parameters are passed to the search query, empty ones are ignored
+     */
+    @Test
+    public void testGetAllTasks_filtered() {
+        System.out.println("----------Starting testGetAllTasks_filtered----------");
+
+        Task task = createTestTask("Groceries", "Buy milk and bread");
+        task.setId(3L);
+
+        when(taskRepository.search(any(), eq(0L), eq(DEFAULT_LIMIT)))
+            .thenReturn(new SliceImpl<>(List.of(task), PageRequest.ofSize(DEFAULT_LIMIT), false));
+
+        // Call the controller's getTaskPage method with a completed filter and a full-text query
+        ResponseEntity<?> response = taskController.getTaskPage(null, null, false, " ", "milk");
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode(), "Expected HTTP 200 OK");
+        assertEquals(List.of(task), ((TaskPage) response.getBody()).getTasks());
+
+        // Verify the filter the search was called with, the blank title prefix is dropped
+        ArgumentCaptor<TaskFilter> filter = ArgumentCaptor.forClass(TaskFilter.class);
+        verify(taskRepository).search(filter.capture(), eq(0L), eq(DEFAULT_LIMIT));
+        assertEquals(false, filter.getValue().getCompleted());
+        assertNull(filter.getValue().getTitlePrefix());
+        assertEquals("milk", filter.getValue().getQuery());
+        verify(taskRepository, never()).findByIdGreaterThanOrderByIdAsc(any(), any());
+
+        System.out.println("testGetAllTasks_filtered completed successfully");
+    }
+
+    /**
+     * Test: A limit above the maximum page size is rejected
+     */
+    @Test
+    public void testGetAllTasks_invalidLimit() {
+        System.out.println("----------Starting testGetAllTasks_invalidLimit----------");
+
+        // Call the controller's getTaskPage method with a limit that is too large
+        ResponseEntity<?> response = taskController.getTaskPage(null, TaskController.MAX_PAGE_SIZE + 1, null, null, null);
+        System.out.println("Response received: " + response);
+
+        // Verify that the response status is 400 BAD_REQUEST
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+
+        // Verify that the Map contains a key "limit"
+        Map<String, String> errors = extractErrors(response);
+        assertTrue(errors.containsKey("limit"), "Expected error for key 'limit', but got: " + errors);
+
+        System.out.println("testGetAllTasks_invalidLimit completed successfully");
+    }
+
     /**
      * Test: Return a Task when it exists
      */
@@ -84,7 +312,7 @@ public class TaskControllerTestRead extends TaskControllerTestBase {
         when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
 
         // Call the controller's getTaskById method
-        ResponseEntity<?> response = taskController.getTaskById(1L);
+        ResponseEntity<?> response = taskController.getTaskById(1L, webRequest);
         System.out.println("Response received: " + response);
 
         // Check that the response has a status of 200 OK
@@ -109,7 +337,7 @@ public class TaskControllerTestRead extends TaskControllerTestBase {
         when(taskRepository.findById(1L)).thenReturn(Optional.empty());
 
         // Call the controller's getTaskById method with ID 1
-        ResponseEntity<?> response = taskController.getTaskById(1L);
+        ResponseEntity<?> response = taskController.getTaskById(1L, webRequest);
         System.out.println("Response received: " + response);
 
         // Verify that the response status is 404 NOT_FOUND.
@@ -122,4 +350,268 @@ public class TaskControllerTestRead extends TaskControllerTestBase {
         assertTrue(errors.containsKey("error"), "Expected error key in response body but got: " + errors);
         System.out.println("testGetTaskById_NotFound completed successfully");
     }
+
+    /**
+     * Test: A completion toggle which isn't written yet is visible to the next read
+     */
+    @Test
+    public void testGetTaskById_pendingToggle() {
+        System.out.println("----------Starting testGetTaskById_pendingToggle----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+        when(writeBehindBuffer.pending(1L)).thenReturn(Optional.of(true));
+
+        ResponseEntity<?> response = taskController.getTaskById(1L, webRequest);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(((Task) response.getBody()).isCompleted(), "Expected the pending completed flag");
+        assertNull(response.getHeaders().getETag(), "Expected no ETag while the version is about to change");
+        assertFalse(task.isCompleted(), "The cached task must not be modified");
+
+        System.out.println("testGetTaskById_pendingToggle completed successfully");
+    }
+
+    /**
+     * Test: Several ids are answered with one query, in request order, missing ids as individual 404s
+     */
+    @Test
+    public void testGetTasksByIds() {
+        System.out.println("----------Starting testGetTasksByIds----------");
+
+        Task task1 = createTestTask("Title 1", "Description 1");
+        task1.setId(1L);
+        Task task3 = createTestTask("Title 3", "Description 3");
+        task3.setId(3L);
+        when(taskRepository.findAllByIds(any())).thenReturn(List.of(task1, task3));
+
+        ResponseEntity<?> response = taskController.getTasksByIds("3, 2,1,3");
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+        List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+        assertEquals(4, results.size());
+        assertSame(task3, results.get(0).getTask());
+        assertEquals(404, results.get(1).getStatus());
+        assertEquals(Map.of("error", "Task with ID: 2 couldn't be found. Task doesn't exist."), results.get(1).getErrors());
+        assertSame(task1, results.get(2).getTask());
+        assertEquals(200, results.get(3).getStatus());
+        assertEquals(3, results.get(3).getIndex());
+
+        // Every id once, in a single query
+        ArgumentCaptor<Long[]> ids = ArgumentCaptor.forClass(Long[].class);
+        verify(taskRepository, times(1)).findAllByIds(ids.capture());
+        assertEquals(3, ids.getValue().length);
+        verify(taskRepository, never()).findById(anyLong());
+
+        System.out.println("testGetTasksByIds completed successfully");
+    }
+
+    /**
+     * Test: The POST variant answers 200 when all ids exist, with pending completion toggles applied
+     */
+    @Test
+    public void testLookupTasks() {
+        System.out.println("----------Starting testLookupTasks----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        when(taskRepository.findAllByIds(any())).thenReturn(List.of(task));
+        when(writeBehindBuffer.pending(1L)).thenReturn(Optional.of(true));
+
+        ResponseEntity<?> response = taskController.lookupTasks(List.of(1L));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<TaskBatchResult> results = (List<TaskBatchResult>) response.getBody();
+        assertTrue(results.get(0).getTask().isCompleted(), "Expected the pending completed flag");
+        assertFalse(task.isCompleted(), "The cached task must not be modified");
+
+        System.out.println("testLookupTasks completed successfully");
+    }
+
+    /**
+     * Test: Malformed, empty or too many ids are rejected without a query
+     */
+    @Test
+    public void testGetTasksByIds_invalid() {
+        System.out.println("----------Starting testGetTasksByIds_invalid----------");
+
+        assertEquals(HttpStatus.BAD_REQUEST, taskController.getTasksByIds("1,two").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, taskController.getTasksByIds(" , ").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, taskController.lookupTasks(List.of()).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, taskController.lookupTasks(Arrays.asList(1L, null)).getStatusCode());
+        List<Long> tooMany = LongStream.rangeClosed(1, TaskController.MAX_LOOKUP_SIZE + 1).boxed().toList();
+        assertEquals(HttpStatus.BAD_REQUEST, taskController.lookupTasks(tooMany).getStatusCode());
+        verify(taskRepository, never()).findAllByIds(any());
+
+        System.out.println("testGetTasksByIds_invalid completed successfully");
+    }
+
+    /**
+     * Test: The stats come from the counters, the Tasks are not read
+     */
+    @Test
+    public void testGetTaskStats() {
+        System.out.println("----------Starting testGetTaskStats----------");
+
+        when(taskRepository.findStats()).thenReturn(new TaskStats(10, 4));
+
+        ResponseEntity<TaskStats> response = taskController.getTaskStats();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(10, response.getBody().getTotal());
+        assertEquals(4, response.getBody().getCompleted());
+        assertEquals(6, response.getBody().getPending());
+        verifyNoInteractions(taskStreamService);
+
+        System.out.println("testGetTaskStats completed successfully");
+    }
+
+    /**
+     * Test: The full list carries validators from the aggregate query, different for JSON and NDJSON
+     */
+    @Test
+    public void testGetAllTasks_validators() {
+        System.out.println("----------Starting testGetAllTasks_validators----------");
+
+        ResponseEntity<StreamingResponseBody> json = taskController.getAllTasks(null, null, webRequest);
+        MockHttpServletResponse ndjsonResponse = new MockHttpServletResponse();
+        taskController.getAllTasks(MediaType.APPLICATION_NDJSON_VALUE, null,
+            new ServletWebRequest(new MockHttpServletRequest("GET", "/tasks"), ndjsonResponse));
+
+        // The validators are written to the response by checkNotModified, once
+        assertEquals(List.of("W/\"2-5-1735725600123456\""), servletResponse.getHeaders(HttpHeaders.ETAG));
+        assertEquals("W/\"2-5-1735725600123456-ndjson\"", ndjsonResponse.getHeader(HttpHeaders.ETAG));
+        assertEquals(LIST_MODIFIED.toEpochMilli() / 1000 * 1000, servletResponse.getDateHeader(HttpHeaders.LAST_MODIFIED));
+        assertNull(json.getHeaders().getETag());
+        assertEquals("no-cache", json.getHeaders().getCacheControl());
+        assertTrue(json.getHeaders().getVary().contains(HttpHeaders.ACCEPT));
+
+        System.out.println("testGetAllTasks_validators completed successfully");
+    }
+
+    /**
+     * Test: A client which has the current list gets a 304 and no task is read
+     */
+    @Test
+    public void testGetAllTasks_notModified() throws Exception {
+        System.out.println("----------Starting testGetAllTasks_notModified----------");
+
+        servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"2-5-1735725600123456\"");
+
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(null, null, webRequest);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody(), "Expected no body for 304 Not Modified");
+        verifyNoInteractions(taskStreamService);
+
+        System.out.println("testGetAllTasks_notModified completed successfully");
+    }
+
+    /**
+     * Test: A changed list is sent again
+     */
+    @Test
+    public void testGetAllTasks_modified() {
+        System.out.println("----------Starting testGetAllTasks_modified----------");
+
+        servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"2-4-1735725600123456\"");
+
+        ResponseEntity<StreamingResponseBody> response = taskController.getAllTasks(null, null, webRequest);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+
+        System.out.println("testGetAllTasks_modified completed successfully");
+    }
+
+    /**
+     * Test: If-None-Match with the current version of a task answers 304
+     */
+    @Test
+    public void testGetTaskById_notModified() {
+        System.out.println("----------Starting testGetTaskById_notModified----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        task.setVersion(3L);
+        task.setUpdatedAt(LIST_MODIFIED);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+        servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "\"3\"");
+
+        ResponseEntity<?> response = taskController.getTaskById(1L, webRequest);
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody(), "Expected no body for 304 Not Modified");
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), servletResponse.getStatus());
+        assertEquals("\"3\"", servletResponse.getHeader(HttpHeaders.ETAG));
+
+        System.out.println("testGetTaskById_notModified completed successfully");
+    }
+
+    /**
+     * Test: If-Modified-Since at or after the last update of a task answers 304
+     */
+    @Test
+    public void testGetTaskById_notModifiedSince() {
+        System.out.println("----------Starting testGetTaskById_notModifiedSince----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        task.setUpdatedAt(LIST_MODIFIED);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+        servletRequest.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 01 Jan 2025 10:00:00 GMT");
+
+        ResponseEntity<?> response = taskController.getTaskById(1L, webRequest);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+
+        // One second earlier the task has changed since
+        MockHttpServletRequest olderRequest = new MockHttpServletRequest("GET", "/tasks/1");
+        olderRequest.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 01 Jan 2025 09:59:59 GMT");
+        response = taskController.getTaskById(1L, new ServletWebRequest(olderRequest, new MockHttpServletResponse()));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(task, response.getBody());
+
+        System.out.println("testGetTaskById_notModifiedSince completed successfully");
+    }
+
+    /**
+     * Test: The change feed hands out an emitter and resumes after the Last-Event-ID
+     */
+    @Test
+    public void testStreamTasks_subscribe() {
+        System.out.println("----------Starting testStreamTasks_subscribe----------");
+
+        SseEmitter emitter = new SseEmitter();
+        when(eventBroadcaster.subscribe("41")).thenReturn(Optional.of(emitter));
+
+        ResponseEntity<SseEmitter> response = taskController.streamTasks("41");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(emitter, response.getBody());
+        assertEquals("no-store", response.getHeaders().getCacheControl());
+
+        System.out.println("testStreamTasks_subscribe completed successfully");
+    }
+
+    /**
+     * Test: Clients beyond the subscriber limit are asked to retry later
+     */
+    @Test
+    public void testStreamTasks_tooManySubscribers() {
+        System.out.println("----------Starting testStreamTasks_tooManySubscribers----------");
+
+        when(eventBroadcaster.subscribe(null)).thenReturn(Optional.empty());
+
+        ResponseEntity<SseEmitter> response = taskController.streamTasks(null);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("5", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        System.out.println("testStreamTasks_tooManySubscribers completed successfully");
+    }
 }
@@ -1,20 +1,25 @@
 package com.example.demo.controller;
 
 import com.example.demo.controller.TaskControllerTestBase;
+import com.example.demo.dto.TaskPatch;
 import com.example.demo.model.Task;
 import com.example.demo.repository.TaskRepository;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import static org.mockito.Mockito.*;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -61,14 +66,11 @@ public class TaskControllerTestUpdate extends TaskControllerTestBase {
         updates.put("description", "New Description");
         updates.put("completed", true);
 
-        // Simulate that no task with the same title exists 
-        when(taskRepository.existsByTitle("New Title")).thenReturn(false);
-
         // Simulate that saving the task returns the updated task object
         Task updatedTask = createTestTask("New Title", "New Description");
         updatedTask.setId(1L);
         updatedTask.setCompleted(true);
-        when(taskRepository.save(task)).thenReturn(updatedTask);
+        when(taskRepository.saveAndFlush(any(Task.class))).thenReturn(updatedTask);
 
         // Call the conrollers updateTask method
         ResponseEntity<?> response = taskController.updateTask(1L, updates);
@@ -86,6 +88,75 @@ public class TaskControllerTestUpdate extends TaskControllerTestBase {
         System.out.println("testUpdateTask_success completed successfully");
     }
 
+    /**
+     * Test: A completion toggle is acknowledged with 202 when the write-behind buffer accepts it
+     */
+    @Test
+    public void testUpdateTask_toggleWriteBehind() {
+        System.out.println("----------Starting testUpdateTask_toggleWriteBehind----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+        when(writeBehindBuffer.offer(1L, true)).thenReturn(true);
+
+        ResponseEntity<?> response = taskController.updateTask(1L, Map.of("completed", true));
+        System.out.println("Response received: " + response);
+
+        // The task is returned with the new flag, but nothing is written synchronously
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertTrue(((Task) response.getBody()).isCompleted(), "Expected the accepted completed flag");
+        assertFalse(task.isCompleted(), "The cached task must not be modified");
+        verify(taskRepository, never()).saveAndFlush(any());
+
+        System.out.println("testUpdateTask_toggleWriteBehind completed successfully");
+    }
+
+    /**
+     * Test: A completion toggle is written synchronously when the write-behind buffer is disabled or full
+     */
+    @Test
+    public void testUpdateTask_toggleBufferFull() {
+        System.out.println("----------Starting testUpdateTask_toggleBufferFull----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+        when(writeBehindBuffer.offer(1L, true)).thenReturn(false);
+        when(taskRepository.saveAndFlush(any(Task.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ResponseEntity<?> response = taskController.updateTask(1L, Map.of("completed", true));
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(((Task) response.getBody()).isCompleted());
+        verify(taskRepository).saveAndFlush(any(Task.class));
+
+        System.out.println("testUpdateTask_toggleBufferFull completed successfully");
+    }
+
+    /**
+     * Test: Other updates first write the pending toggle of the task, so they are applied in order
+     */
+    @Test
+    public void testUpdateTask_flushesPendingToggle() {
+        System.out.println("----------Starting testUpdateTask_flushesPendingToggle----------");
+
+        Task task = createTestTask("Title", "Description");
+        task.setId(1L);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+        when(taskRepository.saveAndFlush(any(Task.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        taskController.updateTask(1L, Map.of("title", "New Title", "completed", false));
+
+        InOrder inOrder = inOrder(writeBehindBuffer, taskRepository);
+        inOrder.verify(writeBehindBuffer).flush(1L);
+        inOrder.verify(taskRepository).saveAndFlush(any(Task.class));
+        verify(writeBehindBuffer, never()).offer(anyLong(), anyBoolean());
+
+        System.out.println("testUpdateTask_flushesPendingToggle completed successfully");
+    }
+
     /**
      * Test: Attempting to update a task that does not exist
      */
@@ -173,4 +244,206 @@ public class TaskControllerTestUpdate extends TaskControllerTestBase {
 
         System.out.println("testUpdateTask_invalidCompleted completed successfully");
     }
+
+    /**
+     * Test: Updating a task to a title which is already taken
+     */
+    @Test
+    public void testUpdateTask_titleExists() {
+        System.out.println("----------Starting testUpdateTask_titleExists----------");
+
+        // Create an existing task with a valid title and description
+        Task task = createTestTask("Old Title", "Old Description");
+        task.setId(1L);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+
+        // Simulate that the UPDATE is rejected by the unique constraint on the title
+        when(taskRepository.saveAndFlush(any(Task.class))).thenThrow(new DataIntegrityViolationException(
+            "duplicate key", new SQLException("duplicate key value violates unique constraint", "23505")));
+
+        // Create an update map with the taken title
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("title", "Taken Title");
+
+        // Call the controllers updateTask method
+        ResponseEntity<?> response = taskController.updateTask(1L, updates);
+        System.out.println("Response received: " + response);
+
+        // Verify that the response status is 400 BAD_REQUEST with an error for the title
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        Map<String, String> errors = extractErrors(response);
+        assertEquals("Title with name: Taken Title already exists.", errors.get("title"));
+
+        // Verify that the found (possibly cached) task was not modified
+        assertEquals("Old Title", task.getTitle(), "The found task must not be modified");
+
+        // Verify that no separate SELECT is issued to check the title
+        verify(taskRepository, never()).existsByTitle(anyString());
+
+        System.out.println("testUpdateTask_titleExists completed successfully");
+    }
+
+    /**
+     * Test: A concurrent change of the task while it is updated returns 409 CONFLICT
+     */
+    @Test
+    public void testUpdateTask_conflict() {
+        System.out.println("----------Starting testUpdateTask_conflict----------");
+
+        Task task = createTestTask("Old Title", "Old Description");
+        task.setId(1L);
+        when(taskRepository.findById(1L)).thenReturn(Optional.of(task));
+
+        // Simulate that the version of the task changed since it was read
+        when(taskRepository.saveAndFlush(any(Task.class)))
+            .thenThrow(new ObjectOptimisticLockingFailureException(Task.class, 1L));
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("completed", true);
+
+        ResponseEntity<?> response = taskController.updateTask(1L, updates);
+        System.out.println("Response received: " + response);
+
+        // Verify that the response status is 409 CONFLICT
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+
+        System.out.println("testUpdateTask_conflict completed successfully");
+    }
+
+    /**
+     * Test: Successfully patch a task with a single statement
+     */
+    @Test
+    public void testPatchTask_success() {
+        System.out.println("----------Starting testPatchTask_success----------");
+
+        // Simulate that the UPDATE returns the changed task with its new version
+        Task patched = createTestTask("Old Title", "Old Description");
+        patched.setId(1L);
+        patched.setCompleted(true);
+        patched.setVersion(4L);
+        when(taskRepository.patch(eq(1L), any(TaskPatch.class), isNull())).thenReturn(Optional.of(patched));
+
+        // Call the controllers patchTask method without If-Match
+        ResponseEntity<?> response = taskController.patchTask(1L, new TaskPatch(null, null, true), null);
+        System.out.println("Response received: " + response);
+
+        // Check that the response has a status of 200 OK and the new version as ETag
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"4\"", response.getHeaders().getETag());
+        assertEquals(patched, response.getBody());
+
+        // Verify that the task was not read before the update
+        verify(taskRepository, never()).findById(anyLong());
+        verify(taskRepository, never()).saveAndFlush(any(Task.class));
+
+        System.out.println("testPatchTask_success completed successfully");
+    }
+
+    /**
+     * Test: The If-Match version is passed to the UPDATE and trimmed values are written
+     */
+    @Test
+    public void testPatchTask_ifMatch() {
+        System.out.println("----------Starting testPatchTask_ifMatch----------");
+
+        Task patched = createTestTask("New Title", "Old Description");
+        patched.setId(1L);
+        patched.setVersion(4L);
+        when(taskRepository.patch(eq(1L), any(TaskPatch.class), eq(3L))).thenReturn(Optional.of(patched));
+
+        // Call the controllers patchTask method with the ETag of version 3
+        ResponseEntity<?> response = taskController.patchTask(1L, new TaskPatch(" New Title ", null, null), "\"3\"");
+        System.out.println("Response received: " + response);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(taskRepository).patch(eq(1L), argThat(patch -> "New Title".equals(patch.getTitle())), eq(3L));
+
+        System.out.println("testPatchTask_ifMatch completed successfully");
+    }
+
+    /**
+     * Test: Patching with an outdated If-Match version returns 412 PRECONDITION_FAILED
+     */
+    @Test
+    public void testPatchTask_versionMismatch() {
+        System.out.println("----------Starting testPatchTask_versionMismatch----------");
+
+        // Simulate that no row matched the id and version, but the task exists
+        when(taskRepository.patch(eq(1L), any(TaskPatch.class), eq(3L))).thenReturn(Optional.empty());
+        when(taskRepository.existsById(1L)).thenReturn(true);
+
+        ResponseEntity<?> response = taskController.patchTask(1L, new TaskPatch(null, null, true), "\"3\"");
+        System.out.println("Response received: " + response);
+
+        // Verify that the response status is 412 PRECONDITION_FAILED
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+
+        System.out.println("testPatchTask_versionMismatch completed successfully");
+    }
+
+    /**
+     * Test: An If-Match that isn't a single strong version fails the precondition without writing
+     */
+    @Test
+    public void testPatchTask_unmatchableIfMatch() {
+        System.out.println("----------Starting testPatchTask_unmatchableIfMatch----------");
+
+        // A weak tag, a list of tags, garbage and a negative version can't match any version
+        for(String ifMatch : new String[] {"W/\"3\"", "\"3\", \"4\"", "abc", "\"-1\""}){
+            ResponseEntity<?> response = taskController.patchTask(1L, new TaskPatch(null, null, true), ifMatch);
+            System.out.println("Response received for " + ifMatch + ": " + response);
+
+            assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        }
+
+        // The UPDATE must not have run unconditionally
+        verify(taskRepository, never()).patch(anyLong(), any(TaskPatch.class), any());
+        verify(writeBehindBuffer, never()).flush(anyLong());
+
+        System.out.println("testPatchTask_unmatchableIfMatch completed successfully");
+    }
+
+    /**
+     * Test: Patching a task that does not exist
+     */
+    @Test
+    public void testPatchTask_notFound() {
+        System.out.println("----------Starting testPatchTask_notFound----------");
+
+        // Simulate that no row matched the id
+        when(taskRepository.patch(eq(1L), any(TaskPatch.class), isNull())).thenReturn(Optional.empty());
+
+        ResponseEntity<?> response = taskController.patchTask(1L, new TaskPatch(null, null, true), null);
+        System.out.println("Response received: " + response);
+
+        // Verify that the response status is 404 NOT_FOUND.
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        verify(taskRepository, never()).existsById(anyLong());
+
+        System.out.println("testPatchTask_notFound completed successfully");
+    }
+
+    /**
+     * Test: Patching with an empty title or without any field is rejected
+     */
+    @Test
+    public void testPatchTask_invalid() {
+        System.out.println("----------Starting testPatchTask_invalid----------");
+
+        // An empty title
+        ResponseEntity<?> response = taskController.patchTask(1L, new TaskPatch(" ", null, null), null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertTrue(extractErrors(response).containsKey("title"));
+
+        // No field at all
+        response = taskController.patchTask(1L, new TaskPatch(), null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertTrue(extractErrors(response).containsKey("error"));
+
+        // Nothing must have been written
+        verify(taskRepository, never()).patch(anyLong(), any(TaskPatch.class), any());
+
+        System.out.println("testPatchTask_invalid completed successfully");
+    }
 }
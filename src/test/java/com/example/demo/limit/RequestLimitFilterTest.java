@@ -0,0 +1,184 @@
+package com.example.demo.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * This test class checks the rate and concurrency limits in front of /tasks
+ */
+public class RequestLimitFilterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    // Rate limit with a budget of 2 full lists, 100 reads and 100 writes, optionally a concurrency limit
+    // The API key "other" is known
+    private RequestLimitFilter filter(boolean rateLimit, int concurrencyLimit) {
+        return new RequestLimitFilter(meterRegistry, rateLimit, 100, 10, 2, 0.1, 100, 10, 1000, List.of("other"),
+            concurrencyLimit > 0, concurrencyLimit, 1, 1000);
+    }
+
+    private MockHttpServletResponse send(RequestLimitFilter filter, MockHttpServletRequest request, FilterChain chain)
+            throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private MockHttpServletResponse send(RequestLimitFilter filter, MockHttpServletRequest request)
+            throws ServletException, IOException {
+        return send(filter, request, (req, res) -> { });
+    }
+
+    private double rejected(String reason, String cost) {
+        return meterRegistry.get("tasks.requests.rejected").tag("reason", reason).tag("cost", cost).counter().count();
+    }
+
+    /*
+     * Test: The bucket allows a burst of its capacity and then one request per refill interval
+     */
+    @Test
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket(2, 1, 0);
+
+        assertEquals(0, bucket.tryTake(0));
+        assertEquals(0, bucket.tryTake(0));
+        assertEquals(SECOND / 2, bucket.tryTake(SECOND / 2));
+        assertEquals(0, bucket.tryTake(SECOND));
+        assertEquals(SECOND, bucket.tryTake(SECOND));
+    }
+
+    /*
+     * Test: A client over its budget for full lists gets 429, its other budgets and other clients are not affected
+     */
+    @Test
+    public void testRateLimit_perClientAndCost() throws Exception {
+        RequestLimitFilter filter = filter(true, 0);
+
+        assertEquals(200, send(filter, new MockHttpServletRequest("GET", "/tasks")).getStatus());
+        assertEquals(200, send(filter, new MockHttpServletRequest("GET", "/tasks")).getStatus());
+        MockHttpServletResponse rejected = send(filter, new MockHttpServletRequest("GET", "/tasks"));
+        assertEquals(429, rejected.getStatus());
+        assertEquals("10", rejected.getHeader("Retry-After"));
+        assertEquals("{\"error\":\"Too many requests, retry in 10 seconds.\"}", rejected.getContentAsString());
+        assertEquals(1, rejected("rate-limit", "scan"));
+
+        MockHttpServletRequest page = new MockHttpServletRequest("GET", "/tasks");
+        page.setParameter("limit", "10");
+        assertEquals(200, send(filter, page).getStatus());
+        assertEquals(200, send(filter, new MockHttpServletRequest("GET", "/tasks/1")).getStatus());
+        MockHttpServletRequest multiGet = new MockHttpServletRequest("GET", "/tasks");
+        multiGet.setParameter("ids", "1,2");
+        assertEquals(200, send(filter, multiGet).getStatus());
+        assertEquals(200, send(filter, new MockHttpServletRequest("POST", "/tasks/lookup")).getStatus());
+        assertEquals(200, send(filter, new MockHttpServletRequest("DELETE", "/tasks/1")).getStatus());
+
+        MockHttpServletRequest otherClient = new MockHttpServletRequest("GET", "/tasks");
+        otherClient.addHeader(RequestLimitFilter.API_KEY_HEADER, "other");
+        assertEquals(200, send(filter, otherClient).getStatus());
+    }
+
+    /*
+     * Test: An unknown API key doesn't get a budget of its own, it counts for the address of the client
+     */
+    @Test
+    public void testRateLimit_unknownApiKeyCountsForAddress() throws Exception {
+        RequestLimitFilter filter = filter(true, 0);
+
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tasks");
+            request.addHeader(RequestLimitFilter.API_KEY_HEADER, "made-up-" + i);
+            assertEquals(i < 2 ? 200 : 429, send(filter, request).getStatus());
+        }
+        assertEquals(429, send(filter, new MockHttpServletRequest("GET", "/tasks")).getStatus());
+    }
+
+    /*
+     * Test: Requests beyond the concurrency limit are shed with 503, and admitted again once one finished
+     */
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        RequestLimitFilter filter = filter(false, 1);
+
+        MockHttpServletResponse[] nested = new MockHttpServletResponse[1];
+        send(filter, new MockHttpServletRequest("GET", "/tasks/1"), (req, res) ->
+            nested[0] = send(filter, new MockHttpServletRequest("POST", "/tasks")));
+        assertEquals(503, nested[0].getStatus());
+        assertEquals("1", nested[0].getHeader("Retry-After"));
+        assertEquals(1, rejected("concurrency-limit", "write"));
+
+        assertEquals(200, send(filter, new MockHttpServletRequest("POST", "/tasks")).getStatus());
+        // Not under /tasks
+        send(filter, new MockHttpServletRequest("GET", "/actuator/health"), (req, res) ->
+            assertEquals(200, send(filter, new MockHttpServletRequest("GET", "/tasks/1")).getStatus()));
+    }
+
+    /*
+     * Test: A streamed response keeps its permit until the async request completed
+     */
+    @Test
+    public void testConcurrencyLimit_asyncRequest() throws Exception {
+        RequestLimitFilter filter = filter(false, 1);
+        MockHttpServletRequest streamed = new MockHttpServletRequest("GET", "/tasks");
+        streamed.setAsyncSupported(true);
+
+        send(filter, streamed, (req, res) -> req.startAsync());
+        assertEquals(503, send(filter, new MockHttpServletRequest("GET", "/tasks/1")).getStatus());
+
+        ((MockAsyncContext) streamed.getAsyncContext()).complete();
+        assertEquals(200, send(filter, new MockHttpServletRequest("GET", "/tasks/1")).getStatus());
+    }
+
+    /*
+     * Test: The limit grows while the latency stays flat and shrinks when it rises
+     */
+    @Test
+    public void testAdaptiveLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100, 0);
+        long now = 0;
+
+        for (int window = 0; window < 10; window++) {
+            now = runWindow(limiter, now, 10_000_000L);
+        }
+        int grownLimit = limiter.getLimit();
+        assertTrue(grownLimit > 25, "Limit after flat latency: " + grownLimit);
+
+        for (int window = 0; window < 10; window++) {
+            now = runWindow(limiter, now, 50_000_000L);
+        }
+        assertTrue(limiter.getLimit() < grownLimit * 3 / 4, "Limit after rising latency: " + limiter.getLimit());
+    }
+
+    // The limiter runs at its limit for one window, every request takes rttNanos
+    private long runWindow(AdaptiveConcurrencyLimiter limiter, long now, long rttNanos) {
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        now += SECOND / 5;
+        for (int i = 0; i < limit; i++) {
+            limiter.release(rttNanos, now);
+        }
+        assertEquals(0, limiter.getInFlight());
+        return now;
+    }
+}
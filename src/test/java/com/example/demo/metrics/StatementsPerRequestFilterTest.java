@@ -0,0 +1,60 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+/*
+ * This test class checks the statements-per-request metric
+ */
+public class StatementsPerRequestFilterTest {
+
+    private StatementCountingInspector inspector;
+    private SimpleMeterRegistry meterRegistry;
+    private StatementsPerRequestFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        inspector = new StatementCountingInspector(0.0);
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new StatementsPerRequestFilter(inspector, meterRegistry);
+    }
+
+    /**
+     * Test: The statements prepared while handling a request are recorded for its URI pattern
+     */
+    @Test
+    public void testRecordsStatementsPerRequest() throws Exception {
+        // Statements of an earlier request on the same thread must not be counted
+        inspector.inspect("select 1");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tasks/1");
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/tasks/{id}");
+            inspector.inspect("select t.id from tasks t where t.id=?");
+            inspector.inspect("update tasks set completed=? where id=?");
+        });
+
+        DistributionSummary summary = meterRegistry.get("tasks.db.statements")
+            .tag("method", "GET")
+            .tag("uri", "/tasks/{id}")
+            .summary();
+        assertEquals(1, summary.count());
+        assertEquals(2.0, summary.totalAmount());
+    }
+
+    /**
+     * Test: The inspector passes the SQL through unchanged
+     */
+    @Test
+    public void testInspectorKeepsSql() {
+        assertEquals("select 1", inspector.inspect("select 1"));
+    }
+}
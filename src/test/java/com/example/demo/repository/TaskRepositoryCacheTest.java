@@ -0,0 +1,110 @@
+package com.example.demo.repository;
+
+import com.example.demo.config.CacheConfig;
+import com.example.demo.model.Task;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.AopTestUtils;
+
+import java.util.Optional;
+
+/*
+ * This test class checks the caching of single Task lookups in TaskRepository
+ */
+@SpringJUnitConfig
+public class TaskRepositoryCacheTest {
+
+    // The mock is wrapped by the caching proxy, so its invocations are the cache misses
+    @Configuration
+    @Import(CacheConfig.class)
+    static class Config {
+        @Bean
+        TaskRepository taskRepository() {
+            return mock(TaskRepository.class);
+        }
+
+        // Converts the replica read TTL default "1s" to a Duration, as in the application
+        @Bean
+        static ConversionService conversionService() {
+            return ApplicationConversionService.getSharedInstance();
+        }
+    }
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    private TaskRepository target;
+
+    @BeforeEach
+    public void setUp() {
+        cacheManager.getCache("tasks").clear();
+        // Unwrap the caching proxy to reach the mock behind it
+        target = AopTestUtils.getTargetObject(taskRepository);
+        reset(target);
+    }
+
+    /**
+     * Test: Repeated lookups of the same id hit the database once
+     */
+    @Test
+    public void testFindById_cached() {
+        Task task = new Task("Title", "Description");
+        task.setId(1L);
+        when(target.findById(1L)).thenReturn(Optional.of(task));
+
+        assertEquals(task, taskRepository.findById(1L).orElseThrow());
+        assertEquals(task, taskRepository.findById(1L).orElseThrow());
+
+        verify(target, times(1)).findById(1L);
+    }
+
+    /**
+     * Test: Missing ids are not cached
+     */
+    @Test
+    public void testFindById_missingNotCached() {
+        when(target.findById(2L)).thenReturn(Optional.empty());
+
+        assertTrue(taskRepository.findById(2L).isEmpty());
+        assertTrue(taskRepository.findById(2L).isEmpty());
+
+        verify(target, times(2)).findById(2L);
+    }
+
+    /**
+     * Test: Saving refreshes the cached Task and deleting evicts it
+     */
+    @Test
+    public void testSaveAndDelete_updateCache() {
+        Task task = new Task("Title", "Description");
+        task.setId(3L);
+        Task updated = new Task("New Title", "Description");
+        updated.setId(3L);
+        when(target.findById(3L)).thenReturn(Optional.of(task));
+        when(target.saveAndFlush(updated)).thenReturn(updated);
+
+        taskRepository.findById(3L);
+        taskRepository.saveAndFlush(updated);
+        assertEquals("New Title", taskRepository.findById(3L).orElseThrow().getTitle());
+        verify(target, times(1)).findById(3L);
+
+        taskRepository.deleteById(3L);
+        taskRepository.findById(3L);
+        verify(target, times(2)).findById(3L);
+    }
+}
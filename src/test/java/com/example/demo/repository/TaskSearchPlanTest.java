@@ -0,0 +1,86 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.TaskFilter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Checks on the PostgreSQL database that the search queries can use the indexes of
+ * V2__create_task_search_indexes.sql, by looking at their EXPLAIN output
+ */
+@SpringBootTest
+@Transactional
+public class TaskSearchPlanTest {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  // 20000 rows, rolled back after each test: few incomplete tasks, few "Groceries" titles,
+  // few descriptions mentioning milk, so an index is cheaper than walking the primary key
+  @BeforeEach
+  public void setUp() {
+    entityManager.createNativeQuery("INSERT INTO tasks (id, title, description, completed)"
+        + " SELECT -n, 'plan-test-' || CASE WHEN n % 1000 = 0 THEN 'Groceries ' ELSE 'Task ' END || n,"
+        + " CASE WHEN n % 1000 = 0 THEN 'buy milk and bread' ELSE 'write report number ' || n END,"
+        + " n % 200 <> 0"
+        + " FROM generate_series(1, 20000) AS n").executeUpdate();
+    entityManager.createNativeQuery("ANALYZE tasks").executeUpdate();
+  }
+
+  @SuppressWarnings("unchecked")
+  private String explain(TaskFilter filter) {
+    TaskSearchRepositoryImpl.SearchQuery searchQuery = TaskSearchRepositoryImpl.buildQuery(filter, Long.MIN_VALUE, 100);
+    Query query = entityManager.createNativeQuery("EXPLAIN " + searchQuery.sql());
+    searchQuery.parameters().forEach(query::setParameter);
+    // The assertions print the plan when they fail
+    return String.join("\n", (List<String>) query.getResultList());
+  }
+
+  /*
+   * Test: completed=false reads the partial index
+   */
+  @Test
+  public void testIncompleteTasks_usePartialIndex() {
+    String plan = explain(new TaskFilter(false, null, null));
+    assertTrue(plan.contains("tasks_incomplete_id_idx"), "Expected the partial index in the plan:\n" + plan);
+  }
+
+  /*
+   * Test: titlePrefix= is an index range scan on the title
+   * Usually on tasks_title_pattern_idx, with the "C" collation the unique title index qualifies as well
+   */
+  @Test
+  public void testTitlePrefix_usesTitleIndex() {
+    String plan = explain(new TaskFilter(null, "plan-test-Groc", null));
+    assertTrue(plan.lines().anyMatch(line -> line.contains("Index Cond") && line.contains("title")),
+        "Expected an index range on the title in the plan:\n" + plan);
+  }
+
+  /*
+   * Test: q= reads the full-text GIN index
+   */
+  @Test
+  public void testFullTextQuery_usesGinIndex() {
+    String plan = explain(new TaskFilter(null, null, "milk bread"));
+    assertTrue(plan.contains("tasks_description_fts_idx"), "Expected the full-text index in the plan:\n" + plan);
+  }
+
+  /*
+   * Test: % and _ in the prefix are matched literally
+   */
+  @Test
+  public void testTitlePrefix_isEscaped() {
+    TaskSearchRepositoryImpl.SearchQuery searchQuery =
+        TaskSearchRepositoryImpl.buildQuery(new TaskFilter(null, "50%_off\\", null), 0L, 10);
+    assertEquals("50\\%\\_off\\\\%", searchQuery.parameters().get("titlePattern"));
+  }
+}
@@ -0,0 +1,84 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.TaskListVersion;
+import com.example.demo.dto.TaskStats;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Checks on the PostgreSQL database that the task_stats triggers of V6__create_task_stats.sql
+ * and V7__add_task_stats_list_version.sql follow every kind of write, every test is rolled back
+ */
+@SpringBootTest
+@Transactional
+public class TaskStatsTest {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private TaskRepository taskRepository;
+
+  private void execute(String sql) {
+    entityManager.createNativeQuery(sql).executeUpdate();
+  }
+
+  // The stats must always match counting the table
+  private void assertStatsMatchTable() {
+    Object[] counted = (Object[]) entityManager.createNativeQuery(
+        "SELECT count(*), count(*) FILTER (WHERE completed) FROM tasks").getSingleResult();
+    TaskStats stats = taskRepository.findStats();
+    assertEquals(((Number) counted[0]).longValue(), stats.getTotal());
+    assertEquals(((Number) counted[1]).longValue(), stats.getCompleted());
+    assertEquals(stats.getTotal() - stats.getCompleted(), stats.getPending());
+
+    Object[] summed = (Object[]) entityManager.createNativeQuery(
+        "SELECT count(*), coalesce(sum(version), 0) FROM tasks").getSingleResult();
+    TaskListVersion listVersion = taskRepository.findListVersion();
+    assertEquals(((Number) summed[0]).longValue(), listVersion.getCount());
+    assertEquals(((Number) summed[1]).longValue(), listVersion.getVersionSum());
+  }
+
+  // Every write must change the list ETag
+  private String assertListChanged(String previousETag) {
+    String eTag = taskRepository.findListVersion().getETag();
+    assertNotEquals(previousETag, eTag);
+    return eTag;
+  }
+
+  /*
+   * Test: Bulk inserts, completion toggles, title updates and deletes are all counted and change the list ETag
+   */
+  @Test
+  public void testStats_followWrites() {
+    TaskStats before = taskRepository.findStats();
+    String eTag = taskRepository.findListVersion().getETag();
+    assertStatsMatchTable();
+
+    execute("INSERT INTO tasks (id, title, description, completed)"
+        + " SELECT -n, 'stats-test-' || n, 'description', n % 4 = 0 FROM generate_series(1, 1000) AS n");
+    eTag = assertListChanged(eTag);
+    TaskStats inserted = taskRepository.findStats();
+    assertEquals(before.getTotal() + 1000, inserted.getTotal());
+    assertEquals(before.getCompleted() + 250, inserted.getCompleted());
+
+    execute("UPDATE tasks SET completed = true WHERE id BETWEEN -100 AND -1");
+    eTag = assertListChanged(eTag);
+    execute("UPDATE tasks SET title = title || '-renamed', version = version + 1 WHERE id BETWEEN -1000 AND -1");
+    eTag = assertListChanged(eTag);
+    assertEquals(before.getCompleted() + 325, taskRepository.findStats().getCompleted());
+
+    execute("DELETE FROM tasks WHERE id BETWEEN -500 AND -1");
+    assertListChanged(eTag);
+    TaskStats deleted = taskRepository.findStats();
+    assertEquals(before.getTotal() + 500, deleted.getTotal());
+    assertEquals(before.getCompleted() + 125, deleted.getCompleted());
+    assertStatsMatchTable();
+  }
+}
@@ -0,0 +1,254 @@
+package com.example.demo.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * This test class checks which pool ReplicaRoutingDataSource takes a connection from
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private final List<ReplicaRoutingDataSource> routingDataSources = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        ReplicaRoutingDataSource.clearReads();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        routingDataSources.forEach(ReplicaRoutingDataSource::close);
+    }
+
+    private HikariDataSource pool(String name, Long lagMillis) throws SQLException {
+        return pool(name, lagMillis, 0);
+    }
+
+    // A pool whose connections answer the lag query with the given lag and the WAL position queries
+    // with the given position, or fail if the lag is null
+    private HikariDataSource pool(String name, Long lagMillis, long walPosition) throws SQLException {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSource.getPoolName()).thenReturn(name);
+        if (lagMillis == null) {
+            when(dataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+            return dataSource;
+        }
+        Connection connection = mock(Connection.class, name);
+        Statement statement = mock(Statement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        ResultSet lag = result(lagMillis);
+        ResultSet position = result(walPosition);
+        when(statement.executeQuery(anyString())).thenReturn(lag);
+        when(statement.executeQuery(ReplicaRoutingDataSource.REPLAY_POSITION_SQL)).thenReturn(position);
+        when(statement.executeQuery(ReplicaRoutingDataSource.WRITE_POSITION_SQL)).thenReturn(position);
+        return dataSource;
+    }
+
+    private static ResultSet result(long value) throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(value);
+        return resultSet;
+    }
+
+    private ReplicaRoutingDataSource routing(ReplicaRoutingDataSource.Balancing balancing, HikariDataSource primary,
+                                             HikariDataSource... replicas) {
+        // After the check at startup the lag is only checked again when the test calls checkLag
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replicas), balancing,
+            Duration.ofSeconds(5), Duration.ofHours(1), "SELECT 0", new SimpleMeterRegistry());
+        routingDataSources.add(routing);
+        routing.checkLag();
+        return routing;
+    }
+
+    // The connection the first statement would run on
+    private Connection target(ReplicaRoutingDataSource routing) throws SQLException {
+        return ((ConnectionProxy) routing.getConnection()).getTargetConnection();
+    }
+
+    private Connection connectionOf(HikariDataSource pool) throws SQLException {
+        return pool.getConnection();
+    }
+
+    /*
+     * Test: A read-only transaction of a GET request reads from the replica, anything else from the primary
+     */
+    @Test
+    public void testReadOnlyTransactionOfGet_usesReplica() throws Exception {
+        HikariDataSource primary = pool("primary", 0L);
+        HikariDataSource replica = pool("replica-1", 0L);
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN, primary, replica);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(connectionOf(primary), target(routing), "Outside a GET request");
+
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        assertSame(connectionOf(replica), target(routing));
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        assertSame(connectionOf(primary), target(routing), "Not a read-only transaction");
+    }
+
+    /*
+     * Test: Round-robin spreads the requests over the replicas, each request stays on its replica
+     */
+    @Test
+    public void testRoundRobin() throws Exception {
+        HikariDataSource replica1 = pool("replica-1", 0L);
+        HikariDataSource replica2 = pool("replica-2", 0L);
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN,
+            pool("primary", 0L), replica1, replica2);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        assertSame(connectionOf(replica1), target(routing));
+        assertSame(connectionOf(replica1), target(routing), "Same request");
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        assertSame(connectionOf(replica2), target(routing));
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        assertSame(connectionOf(replica1), target(routing));
+    }
+
+    /*
+     * Test: Replicas too far behind or unreachable are skipped, without any the primary is read
+     */
+    @Test
+    public void testLaggingAndUnreachableReplicas_areSkipped() throws Exception {
+        HikariDataSource primary = pool("primary", 0L);
+        HikariDataSource lagging = pool("replica-1", 60_000L);
+        HikariDataSource unreachable = pool("replica-2", null);
+        HikariDataSource current = pool("replica-3", 1_000L);
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN,
+            primary, lagging, unreachable, current);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        for (int i = 0; i < 3; i++) {
+            ReplicaRoutingDataSource.allowReplicaReads(0);
+            assertSame(connectionOf(current), target(routing));
+        }
+
+        ReplicaRoutingDataSource noReplica = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN,
+            primary, lagging, unreachable);
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        assertSame(connectionOf(primary), target(noReplica));
+    }
+
+    /*
+     * Test: After a write the client only reads from a replica which replayed past its WAL position
+     */
+    @Test
+    public void testReadYourWrites() throws Exception {
+        HikariDataSource primary = pool("primary", 0L);
+        // Both report no lag, like a standby which replayed all it received so far
+        HikariDataSource behind = pool("replica-1", 0L, 1_000);
+        HikariDataSource caughtUp = pool("replica-2", 0L, 3_000);
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN,
+            primary, behind, caughtUp);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        for (int i = 0; i < 3; i++) {
+            ReplicaRoutingDataSource.allowReplicaReads(2_000);
+            assertSame(connectionOf(caughtUp), target(routing));
+        }
+
+        ReplicaRoutingDataSource onlyBehind = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN, primary, behind);
+        ReplicaRoutingDataSource.allowReplicaReads(2_000);
+        assertSame(connectionOf(primary), target(onlyBehind));
+    }
+
+    /*
+     * Test: Least-connections picks the replica with the fewest connections in use
+     */
+    @Test
+    public void testLeastConnections() throws Exception {
+        HikariDataSource busy = pool("replica-1", 0L);
+        HikariDataSource idle = pool("replica-2", 0L);
+        HikariPoolMXBean busyPool = mock(HikariPoolMXBean.class);
+        when(busyPool.getActiveConnections()).thenReturn(7);
+        when(busy.getHikariPoolMXBean()).thenReturn(busyPool);
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Balancing.LEAST_CONNECTIONS,
+            pool("primary", 0L), busy, idle);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        for (int i = 0; i < 3; i++) {
+            ReplicaRoutingDataSource.allowReplicaReads(0);
+            assertSame(connectionOf(idle), target(routing));
+        }
+    }
+
+    /*
+     * Test: Writing requests get the last write cookie, GET requests pass it on to the routing
+     */
+    @Test
+    public void testFilter_lastWriteCookie() throws Exception {
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN,
+            pool("primary", 0L, 5_000), pool("replica-1", 0L, 1_000));
+        ReplicaRoutingFilter filter = new ReplicaRoutingFilter(routing);
+
+        MockHttpServletResponse patchResponse = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("PATCH", "/tasks/1"), patchResponse, (req, res) -> {
+            assertNull(routing.chooseReplica(), "Writing requests only use the primary");
+            res.getWriter().write("{}");
+        });
+        Cookie cookie = patchResponse.getCookie(ReplicaRoutingFilter.LAST_WRITE_COOKIE);
+        assertNotNull(cookie);
+        // The position of the primary after the write, for the browser session
+        assertEquals("5000", cookie.getValue());
+        assertEquals(-1, cookie.getMaxAge());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        MockHttpServletRequest get = new MockHttpServletRequest("GET", "/tasks/1");
+        get.setCookies(cookie);
+        filter.doFilter(get, new MockHttpServletResponse(), (req, res) ->
+            assertNull(routing.chooseReplica(), "The replica doesn't have the write yet"));
+        filter.doFilter(new MockHttpServletRequest("GET", "/tasks/1"), new MockHttpServletResponse(), (req, res) ->
+            assertNotNull(routing.chooseReplica()));
+    }
+
+    /*
+     * Test: Failed writes and requests outside /tasks get no cookie and don't query the WAL position
+     */
+    @Test
+    public void testFilter_noCookieWithoutSuccessfulTaskWrite() throws Exception {
+        HikariDataSource primary = pool("primary", 0L, 5_000);
+        ReplicaRoutingFilter filter = new ReplicaRoutingFilter(
+            routing(ReplicaRoutingDataSource.Balancing.ROUND_ROBIN, primary, pool("replica-1", 0L, 1_000)));
+
+        MockHttpServletResponse conflict = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("PATCH", "/tasks/1"), conflict, (req, res) -> {
+            ((HttpServletResponse) res).setStatus(409);
+            res.getWriter().write("{}");
+        });
+        MockHttpServletResponse notFound = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("DELETE", "/tasks/2"), notFound, (req, res) ->
+            ((HttpServletResponse) res).sendError(404));
+        MockHttpServletResponse other = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/actuator/refresh"), other, (req, res) ->
+            res.getWriter().write("{}"));
+
+        assertNull(conflict.getCookie(ReplicaRoutingFilter.LAST_WRITE_COOKIE));
+        assertNull(notFound.getCookie(ReplicaRoutingFilter.LAST_WRITE_COOKIE));
+        assertNull(other.getCookie(ReplicaRoutingFilter.LAST_WRITE_COOKIE));
+        verify(primary, never()).getConnection();
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskCopyFormat;
+import com.example.demo.dto.TaskImport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Checks the COPY import and export on the PostgreSQL database, every test is rolled back
+ */
+@SpringBootTest
+@Transactional
+public class TaskCopyServiceTest {
+
+    @Autowired
+    private TaskCopyService taskCopyService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TaskTitleIndex titleIndex;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("INSERT INTO tasks (id, title, description, completed, version)"
+            + " VALUES (nextval('tasks_seq'), 'copy-test-taken', 'already there', false, 3)");
+    }
+
+    private TaskImport importTasks(String file, TaskCopyFormat format) throws Exception {
+        byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+        return taskCopyService.importTasks(new ByteArrayInputStream(bytes), format, (long) bytes.length);
+    }
+
+    private Map<String, Map<String, Object>> importedTasks() {
+        return jdbcTemplate.queryForList("SELECT title, description, completed, version FROM tasks"
+                + " WHERE title LIKE 'copy-test-%'").stream()
+            .collect(Collectors.toMap(row -> (String) row.get("title"), row -> row));
+    }
+
+    /*
+     * Test: Valid rows are inserted and known to the title index, taken, repeated and incomplete ones end up
+     * in the reject file
+     */
+    @Test
+    public void testImportCsv_rejects() throws Exception {
+        titleIndex.rebuild();
+        assertTrue(titleIndex.isAbsent("copy-test-1"));
+
+        TaskImport taskImport = importTasks("description,title,completed\n"
+            + "first,copy-test-1,true\n"
+            + "\"second, with a comma\",copy-test-2,\n"
+            + "again,copy-test-1,false\n"
+            + "taken,copy-test-taken,false\n"
+            + ",copy-test-3,false\n", TaskCopyFormat.CSV);
+
+        assertEquals(TaskImport.State.COMPLETED, taskImport.getState());
+        assertEquals(2, taskImport.getImported());
+        assertEquals(3, taskImport.getRejected());
+        assertEquals(taskImport.getTotalBytes(), taskImport.getBytesRead());
+
+        Map<String, Map<String, Object>> tasks = importedTasks();
+        assertEquals(3, tasks.size());
+        assertEquals(true, tasks.get("copy-test-1").get("completed"));
+        assertEquals("first", tasks.get("copy-test-1").get("description"));
+        assertEquals("second, with a comma", tasks.get("copy-test-2").get("description"));
+        assertEquals(false, tasks.get("copy-test-2").get("completed"));
+        assertEquals(0L, tasks.get("copy-test-2").get("version"));
+        assertEquals("already there", tasks.get("copy-test-taken").get("description"));
+        assertFalse(titleIndex.isAbsent("copy-test-1"));
+        assertFalse(titleIndex.isAbsent("copy-test-2"));
+
+        List<String> rejects = Files.readAllLines(taskCopyService.findRejects(taskImport).orElseThrow());
+        assertEquals(List.of(
+            "row,error,title,description,completed,updated_at",
+            "3,Task Title already exists.,copy-test-1,again,f,",
+            "4,Task Title already exists.,copy-test-taken,taken,f,",
+            "5,Description is required,copy-test-3,,f,"), rejects);
+        assertSame(taskImport, taskCopyService.findImport(taskImport.getId()).orElseThrow());
+
+        // The spooled upload is deleted, only the reject file is kept
+        Path rejectFile = taskCopyService.findRejects(taskImport).orElseThrow();
+        try (Stream<Path> files = Files.list(rejectFile.getParent())) {
+            String upload = taskImport.getId() + "-upload";
+            assertEquals(List.of(), files.filter(file -> file.getFileName().toString().startsWith(upload)).toList());
+        }
+    }
+
+    /*
+     * Test: NDJSON survives an export and import unchanged, escaped characters included
+     */
+    @Test
+    public void testExportAndImportNdjson() throws Exception {
+        TaskImport taskImport = importTasks("{\"title\":\"copy-test-1\",\"description\":\"a \\\"quoted\\\" \\\\ line\\nbreak\"}\n"
+            + "\n"
+            + "{\"title\":\"copy-test-taken\",\"description\":\"taken\",\"completed\":true}\n", TaskCopyFormat.NDJSON);
+        assertEquals(1, taskImport.getImported());
+        assertEquals(1, taskImport.getRejected());
+        assertEquals("a \"quoted\" \\ line\nbreak", importedTasks().get("copy-test-1").get("description"));
+
+        JsonNode reject = objectMapper.readTree(Files.readString(taskCopyService.findRejects(taskImport).orElseThrow()));
+        assertEquals(3, reject.get("row").asInt());
+        assertEquals("Task Title already exists.", reject.get("error").asText());
+        assertTrue(reject.get("task").get("completed").asBoolean());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        taskCopyService.exportTasks(out, TaskCopyFormat.NDJSON);
+        JsonNode exported = out.toString(StandardCharsets.UTF_8).lines()
+            .map(line -> {
+                try {
+                    return objectMapper.readTree(line);
+                } catch (Exception ex) {
+                    throw new AssertionError("Not a JSON line: " + line, ex);
+                }
+            })
+            .filter(task -> task.get("title").asText().equals("copy-test-1"))
+            .findFirst().orElseThrow();
+        assertEquals("a \"quoted\" \\ line\nbreak", exported.get("description").asText());
+        assertFalse(exported.get("completed").asBoolean());
+        assertEquals(0, exported.get("version").asLong());
+    }
+
+    /*
+     * Test: The CSV export starts with its header and can be imported again
+     */
+    @Test
+    public void testExportCsv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        taskCopyService.exportTasks(out, TaskCopyFormat.CSV);
+        String csv = out.toString(StandardCharsets.UTF_8);
+
+        assertTrue(csv.startsWith("id,title,description,completed,version,updated_at\n"), csv.lines().findFirst().orElse(""));
+        assertTrue(csv.contains(",copy-test-taken,already there,f,3,"));
+
+        // Every exported title is taken already
+        TaskImport taskImport = importTasks(csv, TaskCopyFormat.CSV);
+        assertEquals(0, taskImport.getImported());
+        assertEquals(jdbcTemplate.queryForObject("SELECT count(*) FROM tasks", Long.class), taskImport.getRejected());
+    }
+
+    /*
+     * Test: An unknown column in the header is rejected before anything is copied
+     */
+    @Test
+    public void testImportCsv_invalidHeader() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> importTasks("title,description,owner\ncopy-test-1,first,me\n", TaskCopyFormat.CSV));
+
+        assertTrue(ex.getMessage().startsWith("The CSV header must name each column once"), ex.getMessage());
+        assertEquals(List.of("title", "description", "updated_at"), TaskCopyService.parseHeader("Title, \"description\",updatedAt\r\n"));
+        assertThrows(IllegalArgumentException.class, () -> TaskCopyService.parseHeader("title,completed"));
+    }
+
+    /*
+     * Test: A malformed row fails the whole import with its line number
+     */
+    @Test
+    public void testImportCsv_malformedRow() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> importTasks("title,description,completed\ncopy-test-1,first,true\ncopy-test-2,second,maybe\n",
+                TaskCopyFormat.CSV));
+
+        assertTrue(ex.getMessage().contains("line 3"), ex.getMessage());
+        assertEquals(TaskImport.State.FAILED, taskCopyService.findImports().get(0).getState());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/*
+ * This test class checks the fan-out, resume and back-pressure of the GET /tasks/stream subscribers
+ */
+public class TaskEventBroadcasterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    // Sends on the calling thread
+    private TaskEventBroadcaster createBroadcaster(int ringSize, int clientBuffer) {
+        return new TaskEventBroadcaster(meterRegistry, ringSize, clientBuffer, 2, Runnable::run);
+    }
+
+    /**
+     * Test: Every subscriber receives the events, with their ids
+     */
+    @Test
+    public void testPublish_fansOut() {
+        TaskEventBroadcaster broadcaster = createBroadcaster(10, 10);
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        broadcaster.subscribe(null, first);
+        broadcaster.subscribe(null, second);
+
+        broadcaster.publish("1", "{\"type\":\"created\",\"id\":7}");
+
+        assertEquals(List.of("id:1 data:{\"type\":\"created\",\"id\":7}"), first.events);
+        assertEquals(first.events, second.events);
+        assertEquals(2.0, meterRegistry.get("tasks.events.subscribers").gauge().value());
+    }
+
+    /**
+     * Test: A client reconnecting with Last-Event-ID gets exactly the events it missed
+     */
+    @Test
+    public void testSubscribe_resumesAfterLastEventId() {
+        TaskEventBroadcaster broadcaster = createBroadcaster(10, 10);
+        broadcaster.publish("1", "{}");
+        broadcaster.publish("2", "{}");
+        broadcaster.publish("3", "{}");
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe("1", emitter);
+        broadcaster.publish("4", "{}");
+
+        assertEquals(List.of("id:2 data:{}", "id:3 data:{}", "id:4 data:{}"), emitter.events);
+    }
+
+    /**
+     * Test: A client whose last event is no longer in the ring is told to read the tasks again
+     */
+    @Test
+    public void testSubscribe_resetWhenEventIsGone() {
+        TaskEventBroadcaster broadcaster = createBroadcaster(2, 10);
+        broadcaster.publish("1", "{}");
+        broadcaster.publish("2", "{}");
+        broadcaster.publish("3", "{}");
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe("1", emitter);
+
+        assertEquals(List.of("event:reset data:{}"), emitter.events);
+    }
+
+    /**
+     * Test: A subscriber which doesn't keep up is disconnected instead of buffering without bound
+     */
+    @Test
+    public void testPublish_disconnectsSlowSubscriber() {
+        // Sends never run, as if the client stopped reading
+        List<Runnable> stalled = new ArrayList<>();
+        Executor stalledExecutor = stalled::add;
+        TaskEventBroadcaster broadcaster = new TaskEventBroadcaster(meterRegistry, 10, 2, 2, stalledExecutor);
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(null, emitter);
+
+        broadcaster.publish("1", "{}");
+        broadcaster.publish("2", "{}");
+        assertFalse(emitter.completed);
+
+        broadcaster.publish("3", "{}");
+        assertTrue(emitter.completed, "Expected the slow subscriber to be disconnected");
+        assertEquals(0, broadcaster.getSubscriberCount());
+        assertEquals(1.0, meterRegistry.get("tasks.events.dropped").counter().count());
+    }
+
+    /**
+     * Test: No more than max-subscribers streams are opened
+     */
+    @Test
+    public void testSubscribe_limit() {
+        TaskEventBroadcaster broadcaster = createBroadcaster(10, 10);
+
+        assertTrue(broadcaster.subscribe(null).isPresent());
+        assertTrue(broadcaster.subscribe(null).isPresent());
+        assertTrue(broadcaster.subscribe(null).isEmpty(), "Expected the third subscriber to be rejected");
+    }
+
+    // Records the events instead of writing them to a response
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<String> events = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            events.add(builder.build().stream()
+                .map(part -> part.getData().toString())
+                .collect(Collectors.joining())
+                .replace("\n", " ")
+                .trim());
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.demo.service;
+
+import com.example.demo.config.CacheConfig;
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.dto.TaskPatch;
+import com.example.demo.model.Task;
+import com.example.demo.repository.TaskRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.AopTestUtils;
+
+import java.util.Optional;
+
+/*
+ * This test class checks that task events received from other instances evict the changed Tasks from the cache,
+ * while the events of this instance leave the Tasks its own writes cached
+ */
+@SpringJUnitConfig
+public class TaskEventListenerTest {
+
+    // The mock is wrapped by the caching proxy, so its invocations are the cache misses
+    @Configuration
+    @Import(CacheConfig.class)
+    static class Config {
+        @Bean
+        TaskRepository taskRepository() {
+            return mock(TaskRepository.class);
+        }
+
+        // Converts the replica read TTL default "1s" to a Duration, as in the application
+        @Bean
+        static ConversionService conversionService() {
+            return ApplicationConversionService.getSharedInstance();
+        }
+    }
+
+    private static final String OTHER_INSTANCE = "other-instance";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    private Cache taskCache;
+    private TaskEventListener listener;
+
+    @BeforeEach
+    public void setUp() {
+        taskCache = cacheManager.getCache("tasks");
+        taskCache.clear();
+        reset((Object) AopTestUtils.getTargetObject(taskRepository));
+        TaskEventBroadcaster broadcaster = new TaskEventBroadcaster(new SimpleMeterRegistry(), 10, 10, 2, Runnable::run);
+        listener = new TaskEventListener(broadcaster, cacheManager, new ObjectMapper(), "jdbc:none", "", "", true);
+        taskCache.put(1L, "first");
+        taskCache.put(2L, "second");
+    }
+
+    /**
+     * Test: An event of another instance naming a Task evicts only that Task
+     */
+    @Test
+    public void testDispatch_evictsTask() {
+        listener.dispatch("5:" + OTHER_INSTANCE + ":{\"type\":\"updated\",\"id\":1,\"version\":3}");
+
+        assertNull(taskCache.get(1L));
+        assertNotNull(taskCache.get(2L));
+    }
+
+    /**
+     * Test: A delete by completed flag names no Task and clears the cache
+     */
+    @Test
+    public void testDispatch_deletedByCompletedClears() {
+        listener.dispatch("6:" + OTHER_INSTANCE + ":{\"type\":\"deleted\",\"completed\":true}");
+
+        assertNull(taskCache.get(1L));
+        assertNull(taskCache.get(2L));
+    }
+
+    /**
+     * Test: An event that can't be read clears the cache rather than leaving a stale Task
+     */
+    @Test
+    public void testDispatch_unreadableClears() {
+        listener.dispatch("7:" + OTHER_INSTANCE + ":{not json");
+
+        assertNull(taskCache.get(1L));
+        assertNull(taskCache.get(2L));
+    }
+
+    /**
+     * Test: A local PATCH followed by a GET is served from the cache, also after the PATCH's own event arrived
+     */
+    @Test
+    public void testDispatch_ownEventKeepsCachedTask() {
+        TaskRepository target = AopTestUtils.getTargetObject(taskRepository);
+        Task patched = new Task("Patched", "Description");
+        patched.setId(3L);
+        patched.setVersion(2L);
+        when(target.patch(eq(3L), any(TaskPatch.class), isNull())).thenReturn(Optional.of(patched));
+
+        // The event as this instance sends it
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        TaskEventPublisher publisher = new TaskEventPublisher(jdbcTemplate, new ObjectMapper(), true);
+        TaskPatch patch = new TaskPatch();
+        patch.setTitle("Patched");
+        Task task = taskRepository.patch(3L, patch, null).orElseThrow();
+        publisher.publish(TaskEvent.updated(task));
+        String[] payloads = new String[1];
+        verify(jdbcTemplate).query(eq(TaskEventPublisher.NOTIFY_SQL), any(RowCallbackHandler.class),
+            argThat((Object sent) -> {
+                payloads[0] = ((String[]) sent)[0];
+                return true;
+            }));
+        listener.dispatch("8:" + payloads[0]);
+
+        assertEquals("Patched", taskRepository.findById(3L).orElseThrow().getTitle());
+        verify(target, never()).findById(3L);
+
+        // The same change made by another instance is read again
+        listener.dispatch("9:" + payloads[0].replace(TaskEventPublisher.INSTANCE_ID, OTHER_INSTANCE));
+        assertNull(taskCache.get(3L));
+    }
+
+    /**
+     * Test: A reset event, e.g. of an import on another instance, resets the subscribers and keeps the cache
+     */
+    @Test
+    public void testDispatch_resetKeepsCache() {
+        listener.dispatch("10:" + OTHER_INSTANCE + ":{\"type\":\"reset\"}");
+
+        assertNotNull(taskCache.get(1L));
+        assertNotNull(taskCache.get(2L));
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.demo.service;
+
+import com.example.demo.config.CacheConfig;
+import com.example.demo.model.Task;
+import com.example.demo.repository.TaskRepository;
+import com.example.demo.routing.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * This test class checks that concurrent identical TaskRepository lookups share one query,
+ * and which of their results the cache in front keeps
+ */
+@SpringJUnitConfig
+@TestPropertySource(properties = "tasks.cache.replica-read-ttl=200ms")
+public class TaskLookupCoalescerTest {
+
+    // The mock is wrapped by the caching and coalescing proxy, so its invocations are the queries
+    @Configuration
+    @EnableAspectJAutoProxy
+    @Import({CacheConfig.class, TaskLookupCoalescer.class})
+    static class Config {
+        @Bean
+        TaskRepository taskRepository() {
+            return mock(TaskRepository.class);
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        // Converts the timeout and TTL durations, e.g. "2s", as in the application
+        @Bean
+        static ConversionService conversionService() {
+            return ApplicationConversionService.getSharedInstance();
+        }
+    }
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    private TaskRepository target;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    // The tasks.lookups counts before the test, the meters live as long as the context
+    private final Map<String, Double> lookupsBefore = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        cacheManager.getCache("tasks").clear();
+        meterRegistry.find("tasks.lookups").counters().forEach(counter ->
+            lookupsBefore.put(counter.getId().getTag("lookup") + counter.getId().getTag("result"), counter.count()));
+        target = AopTestUtils.getTargetObject(taskRepository);
+        reset(target);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReplicaRoutingDataSource.clearReads();
+        executor.shutdownNow();
+    }
+
+    private double lookups(String lookup, String result) {
+        double count = meterRegistry.get("tasks.lookups").tag("lookup", lookup).tag("result", result).counter().count();
+        return count - lookupsBefore.getOrDefault(lookup + result, 0.0);
+    }
+
+    // Runs the lookup on 8 threads while the first query blocks, and returns their results
+    private <T> List<T> lookUpConcurrently(CountDownLatch release, Callable<T> lookup) throws Exception {
+        List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(lookup));
+        }
+        // Give the followers time to join the blocked query
+        Thread.sleep(200);
+        release.countDown();
+        List<T> values = new ArrayList<>();
+        for (Future<T> result : results) {
+            values.add(result.get(5, TimeUnit.SECONDS));
+        }
+        return values;
+    }
+
+    /**
+     * Test: Concurrent lookups of an uncached id run a single query and all get its Task
+     */
+    @Test
+    public void testFindById_coalesced() throws Exception {
+        Task task = new Task();
+        task.setId(1L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(target.findById(1L)).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(task);
+        });
+
+        List<Optional<Task>> results = lookUpConcurrently(release, () -> taskRepository.findById(1L));
+
+        results.forEach(result -> assertSame(task, result.orElseThrow()));
+        verify(target, times(1)).findById(1L);
+        assertEquals(1, lookups("findById", "executed"));
+        assertEquals(7, lookups("findById", "coalesced"));
+
+        // Now cached, the coalescer isn't reached anymore
+        assertSame(task, taskRepository.findById(1L).orElseThrow());
+        assertEquals(1, lookups("findById", "executed"));
+    }
+
+    /**
+     * Test: A lookup which may read a replica is only served from the cache to requests whose last write it includes,
+     * and only until the replica read TTL is up
+     */
+    @Test
+    public void testFindById_replicaReadCachedForItsClients() throws Exception {
+        Task task = new Task();
+        task.setId(3L);
+        when(target.findById(3L)).thenReturn(Optional.of(task));
+
+        ReplicaRoutingDataSource.allowReplicaReads(1_000);
+        taskRepository.findById(3L);
+        taskRepository.findById(3L);
+        // A client with an older last write, or none, gets it too
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        taskRepository.findById(3L);
+        verify(target, times(1)).findById(3L);
+
+        // A client with a newer last write reads again
+        ReplicaRoutingDataSource.allowReplicaReads(2_000);
+        taskRepository.findById(3L);
+        verify(target, times(2)).findById(3L);
+
+        // Requests which only read the primary never get a replica read
+        ReplicaRoutingDataSource.clearReads();
+        taskRepository.findById(3L);
+        verify(target, times(3)).findById(3L);
+
+        // A replica read expires after the TTL
+        ReplicaRoutingDataSource.allowReplicaReads(0);
+        cacheManager.getCache("tasks").clear();
+        taskRepository.findById(3L);
+        Thread.sleep(300);
+        taskRepository.findById(3L);
+        verify(target, times(5)).findById(3L);
+
+        // A read of the primary is served to everyone
+        ReplicaRoutingDataSource.clearReads();
+        taskRepository.findById(3L);
+        ReplicaRoutingDataSource.allowReplicaReads(5_000);
+        taskRepository.findById(3L);
+        verify(target, times(6)).findById(3L);
+    }
+
+    /**
+     * Test: A lookup after a write of the Task doesn't join a lookup which started before it,
+     * and the older lookup's Task doesn't replace the newer one in the cache
+     */
+    @Test
+    public void testFindById_writeWhileInFlight() throws Exception {
+        Task before = new Task();
+        before.setId(4L);
+        Task after = new Task();
+        after.setId(4L);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+        when(target.findById(4L)).thenAnswer(invocation -> {
+            if (queries.incrementAndGet() == 1) {
+                release.await();
+                return Optional.of(before);
+            }
+            return Optional.of(after);
+        });
+        Future<Optional<Task>> inFlight = executor.submit(() -> taskRepository.findById(4L));
+        Thread.sleep(100);
+
+        // The write evicts the Task, as for another instance's update
+        cacheManager.getCache("tasks").evict(4L);
+        assertSame(after, taskRepository.findById(4L).orElseThrow());
+        assertEquals(0, lookups("findById", "coalesced"));
+
+        release.countDown();
+        assertSame(before, inFlight.get(5, TimeUnit.SECONDS).orElseThrow());
+        assertSame(after, taskRepository.findById(4L).orElseThrow());
+        assertEquals(2, queries.get());
+    }
+
+    /**
+     * Test: A write during a lookup keeps its result out of the cache
+     */
+    @Test
+    public void testFindById_supersededNotCached() throws Exception {
+        Task before = new Task();
+        before.setId(5L);
+        Task after = new Task();
+        after.setId(5L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(target.findById(5L)).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(before);
+        });
+        when(target.save(after)).thenReturn(after);
+        Future<Optional<Task>> inFlight = executor.submit(() -> taskRepository.findById(5L));
+        Thread.sleep(100);
+
+        taskRepository.save(after);
+        release.countDown();
+        assertSame(before, inFlight.get(5, TimeUnit.SECONDS).orElseThrow());
+        assertSame(after, taskRepository.findById(5L).orElseThrow());
+        verify(target, times(1)).findById(5L);
+    }
+
+    /**
+     * Test: A failing query fails every caller waiting for it
+     */
+    @Test
+    public void testExistsByTitle_failureShared() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(target.existsByTitle("Task")).thenAnswer(invocation -> {
+            release.await();
+            throw new IllegalStateException("Connection lost");
+        });
+
+        List<String> errors = lookUpConcurrently(release, () -> {
+            try {
+                taskRepository.existsByTitle("Task");
+                return null;
+            } catch (IllegalStateException ex) {
+                return ex.getMessage();
+            }
+        });
+
+        errors.forEach(error -> assertEquals("Connection lost", error));
+        verify(target, times(1)).existsByTitle("Task");
+    }
+
+    /**
+     * Test: Lookups inside a transaction always run their own query
+     */
+    @Test
+    public void testFindById_inTransaction() {
+        when(target.findById(2L)).thenReturn(Optional.empty());
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            taskRepository.findById(2L);
+            taskRepository.findById(2L);
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        verify(target, times(2)).findById(2L);
+        assertEquals(0, lookups("findById", "executed"));
+    }
+
+    /**
+     * Test: A caller stops waiting for a hanging query at its deadline and runs the query itself
+     */
+    @Test
+    public void testSingleFlight_timeout() throws Throwable {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, String> flights = new SingleFlight<>(TimeUnit.MILLISECONDS.toNanos(100),
+            meterRegistry.counter("executed"), meterRegistry.counter("coalesced"), meterRegistry.counter("timed-out"));
+        CountDownLatch hanging = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> {
+            try {
+                return flights.run("key", 0, () -> {
+                    hanging.await();
+                    return "first";
+                });
+            } catch (Throwable ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        Thread.sleep(20);
+
+        assertEquals("second", flights.run("key", 0, () -> "second"));
+        assertEquals(1, meterRegistry.counter("timed-out").count());
+        assertEquals(0, meterRegistry.counter("coalesced").count());
+
+        hanging.countDown();
+        assertEquals("first", leader.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flights.getInFlight());
+    }
+
+    /**
+     * Test: A caller doesn't join a query which may be less up to date than it needs
+     */
+    @Test
+    public void testSingleFlight_freshness() throws Throwable {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, String> flights = new SingleFlight<>(TimeUnit.SECONDS.toNanos(5),
+            meterRegistry.counter("executed"), meterRegistry.counter("coalesced"), meterRegistry.counter("timed-out"));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> replicaRead = executor.submit(() -> {
+            try {
+                return flights.run("key", 1_000, () -> {
+                    calls.incrementAndGet();
+                    release.await();
+                    return "replica";
+                });
+            } catch (Throwable ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        Thread.sleep(20);
+
+        assertEquals("primary", flights.run("key", Long.MAX_VALUE, () -> "primary"));
+        release.countDown();
+        assertEquals("replica", replicaRead.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(2, meterRegistry.counter("executed").count());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskField;
+import com.example.demo.dto.TaskListFormat;
+import com.example.demo.model.Task;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * This test class checks the formats and field selections written by the Task list stream
+ */
+public class TaskStreamServiceTest {
+
+    private ObjectMapper objectMapper;
+    private TaskStreamService taskStreamService;
+    private List<Task> tasks;
+
+    @BeforeEach
+    public void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        taskStreamService = new TaskStreamService(null, objectMapper);
+
+        Task first = new Task("First", "First description");
+        first.setId(1L);
+        first.setUpdatedAt(Instant.parse("2025-01-01T10:00:00Z"));
+        Task second = new Task("Second", "Second description");
+        second.setId(2L);
+        second.setCompleted(true);
+        second.setVersion(3L);
+        second.setUpdatedAt(Instant.parse("2025-01-02T10:00:00Z"));
+        tasks = List.of(first, second);
+    }
+
+    private byte[] write(TaskListFormat format, List<TaskField> fields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        taskStreamService.writeTasks(tasks.iterator(), out, format, fields);
+        return out.toByteArray();
+    }
+
+    /**
+     * Test: JSON, Smile and CBOR hold the same array of Tasks
+     */
+    @Test
+    public void testWriteTasks_formats() throws Exception {
+        JsonNode json = objectMapper.readTree(write(TaskListFormat.JSON, null));
+        JsonNode smile = objectMapper.copyWith(new SmileFactory()).readTree(write(TaskListFormat.SMILE, null));
+        JsonNode cbor = objectMapper.copyWith(new CBORFactory()).readTree(write(TaskListFormat.CBOR, null));
+
+        assertEquals(2, json.size());
+        assertEquals("Second", json.get(1).get("title").asText());
+        assertEquals("2025-01-02T10:00:00Z", json.get(1).get("updatedAt").asText());
+        assertEquals(json, smile);
+        assertEquals(json, cbor);
+    }
+
+    /**
+     * Test: NDJSON writes one Task per line
+     */
+    @Test
+    public void testWriteTasks_ndjson() throws Exception {
+        String[] lines = new String(write(TaskListFormat.NDJSON, null)).split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals(1L, objectMapper.readTree(lines[0]).get("id").asLong());
+        assertEquals(2L, objectMapper.readTree(lines[1]).get("id").asLong());
+    }
+
+    /**
+     * Test: A field selection writes only those properties
+     */
+    @Test
+    public void testWriteTasks_fields() throws Exception {
+        JsonNode json = objectMapper.readTree(write(TaskListFormat.JSON, List.of(TaskField.ID, TaskField.COMPLETED)));
+
+        assertEquals("[{\"id\":1,\"completed\":false},{\"id\":2,\"completed\":true}]", json.toString());
+        assertTrue(write(TaskListFormat.SMILE, List.of(TaskField.ID)).length < write(TaskListFormat.SMILE, null).length);
+    }
+
+    /**
+     * Test: A list which fails half way doesn't end like a complete JSON array
+     */
+    @Test
+    public void testWriteTasks_failureLeavesArrayOpen() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Iterator<Task> failing = new Iterator<>() {
+            private boolean first = true;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Task next() {
+                if (!first) {
+                    throw new IllegalStateException("connection lost");
+                }
+                first = false;
+                return tasks.get(0);
+            }
+        };
+
+        assertThrows(IllegalStateException.class,
+            () -> taskStreamService.writeTasks(failing, out, TaskListFormat.JSON, null));
+        assertFalse(out.toString().endsWith("]"), "Expected a truncated array but got: " + out);
+    }
+}
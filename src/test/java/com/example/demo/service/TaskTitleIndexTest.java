@@ -0,0 +1,150 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * This test class checks how the title index is loaded, rebuilt and handed over
+ */
+public class TaskTitleIndexTest {
+
+    private static final String COUNT_SQL = "SELECT count(*) FROM tasks";
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+
+    // The titles the next load reads, and what runs while it reads them
+    private List<String> titles;
+    private Runnable duringRead;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        titles = new ArrayList<>(List.of("Existing task"));
+        duringRead = () -> { };
+        meterRegistry = new SimpleMeterRegistry();
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(COUNT_SQL, Long.class)).thenAnswer(invocation -> (long) titles.size());
+
+        // The titles are read through a JdbcTemplate of their own over the same DataSource
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenAnswer(invocation -> titleRows());
+    }
+
+    private ResultSet titleRows() throws SQLException {
+        Iterator<String> rows = new ArrayList<>(titles).iterator();
+        String[] current = new String[1];
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenAnswer(invocation -> {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            current[0] = rows.next();
+            duringRead.run();
+            return true;
+        });
+        when(resultSet.getString(1)).thenAnswer(invocation -> current[0]);
+        return resultSet;
+    }
+
+    private TaskTitleIndex index(boolean enabled) {
+        return new TaskTitleIndex(jdbcTemplate, mock(PlatformTransactionManager.class), meterRegistry, enabled,
+            100, 0.01, Duration.ofHours(1));
+    }
+
+    /**
+     * Test: Titles are only reported absent once the index is loaded, then loaded and added titles are known
+     */
+    @Test
+    public void testLoad() {
+        TaskTitleIndex index = index(true);
+        assertFalse(index.isAbsent("New task"), "Not loaded yet");
+
+        index.rebuildIfDue();
+
+        assertFalse(index.isAbsent("Existing task"));
+        assertTrue(index.isAbsent("New task"));
+        index.add("New task");
+        assertFalse(index.isAbsent("New task"));
+    }
+
+    /**
+     * Test: A title written while a rebuild reads the table, after its snapshot, is in the new filter too
+     */
+    @Test
+    public void testRebuild_keepsTitlesAddedMeanwhile() {
+        TaskTitleIndex index = index(true);
+        index.rebuild();
+
+        duringRead = () -> index.add("Added during rebuild");
+        index.rebuild();
+
+        assertFalse(index.isAbsent("Added during rebuild"));
+        assertFalse(index.isAbsent("Existing task"));
+    }
+
+    /**
+     * Test: A failed load is retried with the next check, and markStale rebuilds before the interval is up
+     */
+    @Test
+    public void testRebuildIfDue_retriesAndMarkStale() {
+        TaskTitleIndex index = index(true);
+        when(jdbcTemplate.queryForObject(COUNT_SQL, Long.class))
+            .thenThrow(new DataAccessResourceFailureException("Connection refused"))
+            .thenAnswer(invocation -> (long) titles.size());
+
+        index.rebuildIfDue();
+        assertFalse(index.isAbsent("New task"), "Still checked against the database");
+        index.rebuildIfDue();
+        assertTrue(index.isAbsent("New task"));
+
+        // Within the rebuild interval nothing is read again
+        index.rebuildIfDue();
+        verify(jdbcTemplate, times(2)).queryForObject(COUNT_SQL, Long.class);
+
+        // Another instance took a title
+        titles.add("Taken elsewhere");
+        index.markStale();
+        index.rebuildIfDue();
+        verify(jdbcTemplate, times(3)).queryForObject(COUNT_SQL, Long.class);
+        assertFalse(index.isAbsent("Taken elsewhere"));
+    }
+
+    /**
+     * Test: A disabled index never reads the table and reports no title as absent
+     */
+    @Test
+    public void testDisabled() {
+        TaskTitleIndex index = index(false);
+
+        index.rebuildIfDue();
+        index.add("New task");
+
+        assertFalse(index.isAbsent("Other task"));
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(0.0, meterRegistry.get("tasks.title_index.size").gauge().value());
+    }
+}
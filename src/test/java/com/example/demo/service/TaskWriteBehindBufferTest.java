@@ -0,0 +1,211 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TaskEvent;
+import com.example.demo.model.Task;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * This test class checks the write-behind buffer for completion toggles
+ */
+public class TaskWriteBehindBufferTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ConcurrentMapCacheManager cacheManager;
+    private SimpleMeterRegistry meterRegistry;
+    private TaskEventPublisher eventPublisher;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        cacheManager = new ConcurrentMapCacheManager("tasks");
+        meterRegistry = new SimpleMeterRegistry();
+        eventPublisher = mock(TaskEventPublisher.class);
+    }
+
+    // The rows the flush UPDATE returns, the ones whose flag changed
+    @SuppressWarnings("unchecked")
+    private void flushReturns(List<Task> changed) {
+        when(jdbcTemplate.query(eq(TaskWriteBehindBuffer.FLUSH_SQL), any(RowMapper.class), any(OffsetDateTime.class),
+            any(long[].class), any(boolean[].class))).thenReturn(changed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void verifyFlushes(int times) {
+        verify(jdbcTemplate, times(times)).query(eq(TaskWriteBehindBuffer.FLUSH_SQL), any(RowMapper.class),
+            any(OffsetDateTime.class), any(long[].class), any(boolean[].class));
+    }
+
+    private static Task written(long id, boolean completed) {
+        Task task = new Task("Task " + id, "Description");
+        task.setId(id);
+        task.setCompleted(completed);
+        task.setVersion(2L);
+        task.setUpdatedAt(Instant.now());
+        return task;
+    }
+
+    private TaskWriteBehindBuffer createBuffer(boolean enabled, int maxPending) {
+        return new TaskWriteBehindBuffer(jdbcTemplate, cacheManager, meterRegistry, eventPublisher, enabled, maxPending);
+    }
+
+    /**
+     * Test: Toggles of the same task are coalesced and written with one UPDATE, the last one wins
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushAll_coalescesToggles() {
+        TaskWriteBehindBuffer buffer = createBuffer(true, 100);
+        Cache cache = cacheManager.getCache("tasks");
+        cache.put(1L, "stale");
+        cache.put(2L, "stale");
+        // Task 2 already had the flag, only task 1 changed
+        Task task1 = written(1L, false);
+        flushReturns(List.of(task1));
+
+        assertTrue(buffer.offer(1L, true));
+        assertTrue(buffer.offer(2L, true));
+        assertTrue(buffer.offer(1L, false));
+        assertEquals(Optional.of(false), buffer.pending(1L), "Expected the last toggle to win");
+
+        buffer.flushAll();
+
+        ArgumentCaptor<Object> ids = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<Object> values = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate, times(1)).query(eq(TaskWriteBehindBuffer.FLUSH_SQL), any(RowMapper.class),
+            any(OffsetDateTime.class), ids.capture(), values.capture());
+        long[] flushedIds = (long[]) ids.getValue();
+        boolean[] flushedValues = (boolean[]) values.getValue();
+        assertEquals(2, flushedIds.length);
+        for (int i = 0; i < flushedIds.length; i++) {
+            assertEquals(flushedIds[i] == 2L, flushedValues[i], "Unexpected flag for task " + flushedIds[i]);
+        }
+
+        // Nothing is pending anymore, the changed Task is cached as written and the other evicted
+        assertTrue(buffer.pending(1L).isEmpty());
+        assertSame(task1, cache.get(1L).get());
+        assertNull(cache.get(2L));
+        assertEquals(2.0, meterRegistry.get("tasks.write_behind.flushed").counter().count());
+        // Only the changed Task is announced, with its new version
+        verify(eventPublisher).publish(argThat((List<TaskEvent> events) -> events.size() == 1
+            && events.get(0).getId() == 1L && events.get(0).getVersion() == 2L));
+    }
+
+    /**
+     * Test: Concurrent offers of new tasks never grow the buffer past maxPending
+     */
+    @Test
+    public void testOffer_concurrentlyFull() throws Exception {
+        TaskWriteBehindBuffer buffer = createBuffer(true, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                long firstId = thread * 1000L;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int accepted = 0;
+                    for (long id = firstId; id < firstId + 100; id++) {
+                        accepted += buffer.offer(id, true) ? 1 : 0;
+                    }
+                    return accepted;
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            for (Future<Integer> result : results) {
+                accepted += result.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(10, accepted);
+            assertEquals(10.0, meterRegistry.get("tasks.write_behind.pending").gauge().value());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test: A full buffer only accepts tasks which are already pending
+     */
+    @Test
+    public void testOffer_fullBuffer() {
+        TaskWriteBehindBuffer buffer = createBuffer(true, 2);
+
+        assertTrue(buffer.offer(1L, true));
+        assertTrue(buffer.offer(2L, true));
+        assertFalse(buffer.offer(3L, true), "Expected a new task to be rejected when the buffer is full");
+        assertTrue(buffer.offer(1L, false), "Expected a pending task to be replaced when the buffer is full");
+        assertEquals(2.0, meterRegistry.get("tasks.write_behind.pending").gauge().value());
+    }
+
+    /**
+     * Test: A disabled buffer accepts nothing
+     */
+    @Test
+    public void testOffer_disabled() {
+        TaskWriteBehindBuffer buffer = createBuffer(false, 100);
+
+        assertFalse(buffer.offer(1L, true));
+        assertTrue(buffer.pending(1L).isEmpty());
+    }
+
+    /**
+     * Test: Toggles stay pending when the UPDATE fails and are written by the next flush
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushAll_retriesAfterFailure() {
+        TaskWriteBehindBuffer buffer = createBuffer(true, 100);
+        buffer.offer(1L, true);
+        when(jdbcTemplate.query(eq(TaskWriteBehindBuffer.FLUSH_SQL), any(RowMapper.class), any(OffsetDateTime.class),
+            any(long[].class), any(boolean[].class)))
+            .thenThrow(new QueryTimeoutException("timeout"))
+            .thenReturn(List.of(written(1L, true)));
+
+        buffer.flushAll();
+        assertEquals(Optional.of(true), buffer.pending(1L), "Expected the toggle to stay pending");
+        verifyNoInteractions(eventPublisher);
+
+        buffer.flushAll();
+        assertTrue(buffer.pending(1L).isEmpty());
+        verifyFlushes(2);
+    }
+
+    /**
+     * Test: Closing writes the pending toggles and later toggles are written by the caller
+     */
+    @Test
+    public void testClose_flushesAndRejects() {
+        TaskWriteBehindBuffer buffer = createBuffer(true, 100);
+        buffer.offer(1L, true);
+
+        buffer.close();
+
+        verifyFlushes(1);
+        assertTrue(buffer.pending(1L).isEmpty());
+        assertFalse(buffer.offer(2L, true), "Expected no toggles to be accepted after shutdown");
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * This test class checks the size and accuracy of the title index's Bloom filter
+ */
+public class TitleBloomFilterTest {
+
+    /*
+     * Test: 10 million titles at 1% take about 12 MB, independent of the title length
+     */
+    @Test
+    public void testSize() {
+        TitleBloomFilter filter = new TitleBloomFilter(10_000_000, 0.01);
+
+        assertEquals(11_981_328, filter.getByteSize());
+    }
+
+    /*
+     * Test: Added titles are always found, absent ones are reported as maybe taken at about the configured rate
+     */
+    @Test
+    public void testFalsePositiveRate() {
+        int titles = 200_000;
+        TitleBloomFilter filter = new TitleBloomFilter(titles, 0.01);
+        for (int i = 0; i < titles; i++) {
+            filter.add("Task " + i);
+        }
+
+        for (int i = 0; i < titles; i++) {
+            assertTrue(filter.mightContain("Task " + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < titles; i++) {
+            if (filter.mightContain("Other task " + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / titles;
+        assertTrue(rate < 0.015, "False positive rate: " + rate);
+    }
+}